@@ -0,0 +1,43 @@
+package hello.jdbc.connection;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * member.pool.adaptive.enabled=true 면 스프링 부트가 만드는 DataSource 대신 이걸 쓴다.
+ * spring.datasource.* (application.properties 의 H2 설정)로 Hikari 를 만들고, InstrumentedDataSource 로 감싸서 DataSource 로 등록한다.
+ * AdaptivePoolSizer 는 그 숫자를 보고 Hikari 크기를 조절한다.
+ */
+@Configuration
+@ConditionalOnProperty(prefix = "member.pool.adaptive", name = "enabled", havingValue = "true")
+public class AdaptivePoolConfig {
+
+    //DataSource 로 주입되면 안 된다. 주입은 감싼 쪽(dataSource)으로만.
+    @Bean(autowireCandidate = false)
+    @ConfigurationProperties("spring.datasource.hikari")
+    HikariDataSource hikariDataSource(DataSourceProperties properties) {
+        return properties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+    }
+
+    @Bean
+    InstrumentedDataSource dataSource(DataSourceProperties properties,
+                                      @Value("${member.pool.adaptive.summary-interval-millis:60000}") long summaryIntervalMillis) {
+        return new InstrumentedDataSource(hikariDataSource(properties), summaryIntervalMillis);
+    }
+
+    @Bean
+    AdaptivePoolSizer adaptivePoolSizer(DataSourceProperties properties, InstrumentedDataSource dataSource,
+                                        @Value("${member.pool.adaptive.min-size:2}") int minSize,
+                                        @Value("${member.pool.adaptive.max-size:20}") int maxSize,
+                                        @Value("${member.pool.adaptive.increase-step:2}") int increaseStep,
+                                        @Value("${member.pool.adaptive.target-wait-millis:5}") long targetWaitMillis,
+                                        @Value("${member.pool.adaptive.interval-millis:10000}") long intervalMillis) {
+        return new AdaptivePoolSizer(hikariDataSource(properties), dataSource,
+                minSize, maxSize, increaseStep, targetWaitMillis, intervalMillis);
+    }
+}
@@ -0,0 +1,210 @@
+package hello.jdbc.connection;
+
+import com.zaxxer.hikari.HikariConfigMXBean;
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.HikariPoolMXBean;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Hikari 의 maximumPoolSize 를 부하에 맞춰 minSize ~ maxSize 안에서 조절한다.
+ * 이체가 몰릴 때는 풀이 모자라고, 밤에는 H2 세션만 잡아먹는 고정 크기 대신 쓴다.
+ *
+ * intervalMillis 마다 InstrumentedDataSource 의 숫자로 그 구간을 본다.
+ * - 필요한 커넥션 수 추정 (Little's law) : 초당 획득 수 x 평균 사용 시간 x 여유(1.2)
+ * - 압박 : 평균 획득 대기 > targetWait, 대기 스레드가 있음, 타임아웃 발생
+ * - 여유 : 평균 획득 대기 < targetWait / 4 이고 추정치 x 1.5 < 지금 크기
+ *
+ * 조절은 AIMD 다. 압박이 연속 2구간이면 increaseStep 만큼(추정치가 더 크면 추정치까지) 늘리고,
+ * 여유가 연속 5구간이면 3/4 로(추정치 아래로는 안 내려간다) 줄인다. 타임아웃이 나면 바로 늘린다.
+ * 바꾼 뒤 2구간은 쉬면서 결과를 본다. (hysteresis - 경계에서 늘렸다 줄였다 반복하지 않게)
+ *
+ * Hikari 는 maximumPoolSize 를 실행 중에 바꿀 수 있다. 늘리면 필요할 때 더 만든다.
+ * 줄여도 이미 있는 커넥션은 닫지 않는다. (반납돼도 그대로 풀에 남는다) 남는 커넥션은 housekeeper(30초 주기)가
+ * idleTimeout(기본 10분) 넘게 놀고 있는 것부터 minimumIdle 까지만 닫는다. 그래서 실제로 줄어드는 건 그 다음이고,
+ * minimumIdle 이 maximumPoolSize 와 같으면(Hikari 기본값, 고정 크기 풀) 아예 안 닫는다. 줄일 때 minimumIdle 을 새 크기보다 낮추는 이유다.
+ * 빨리 줄어야 하면 spring.datasource.hikari.idle-timeout 을 낮춘다.
+ */
+@Slf4j
+public class AdaptivePoolSizer implements AutoCloseable {
+
+    private static final double HEADROOM = 1.2;
+    private static final int INCREASE_STREAK = 2;
+    private static final int DECREASE_STREAK = 5;
+    private static final int COOLDOWN = 2;
+    private static final double DECREASE_FACTOR = 0.75;
+
+    private final HikariDataSource hikari;
+    private final InstrumentedDataSource metrics;
+    private final int minSize;
+    private final int maxSize;
+    private final int increaseStep;
+    private final long targetWaitMicros;
+    private final long intervalMillis;
+    private final ScheduledExecutorService scheduler;
+
+    //구간 계산용 지난 값. 스케줄러 스레드만 만진다.
+    private long lastAcquireCount;
+    private long lastAcquireSum;
+    private long lastHoldCount;
+    private long lastHoldSum;
+    private long lastTimeouts;
+    private int pressureStreak;
+    private int slackStreak;
+    private int cooldown;
+    private volatile int lastEstimate;
+
+    private final LongAdder increases = new LongAdder();
+    private final LongAdder decreases = new LongAdder();
+
+    /**
+     * @param metrics hikari 를 감싼 InstrumentedDataSource. 애플리케이션은 이걸 DataSource 로 써야 숫자가 잡힌다.
+     */
+    public AdaptivePoolSizer(HikariDataSource hikari, InstrumentedDataSource metrics, int minSize, int maxSize,
+                             int increaseStep, long targetWaitMillis, long intervalMillis) {
+        if (minSize <= 0 || maxSize < minSize) {
+            throw new IllegalArgumentException("minSize=" + minSize + " maxSize=" + maxSize);
+        }
+        this.hikari = hikari;
+        this.metrics = metrics;
+        this.minSize = minSize;
+        this.maxSize = maxSize;
+        this.increaseStep = increaseStep;
+        this.targetWaitMicros = TimeUnit.MILLISECONDS.toMicros(targetWaitMillis);
+        this.intervalMillis = intervalMillis;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "adaptive-pool-sizer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::tickQuietly, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private void tickQuietly() {
+        try {
+            tick();
+        } catch (RuntimeException e) {
+            log.error("풀 크기 조절 실패", e);
+        }
+    }
+
+    private void tick() {
+        LatencyHistogram acquire = metrics.getAcquireHistogram();
+        LatencyHistogram hold = metrics.getHoldHistogram();
+        long acquireCount = acquire.getCount();
+        long acquireSum = acquire.getSum();
+        long holdCount = hold.getCount();
+        long holdSum = hold.getSum();
+        long timeouts = metrics.getTimeoutCount();
+
+        long acquired = acquireCount - lastAcquireCount;
+        long released = holdCount - lastHoldCount;
+        double arrivalsPerSecond = acquired * 1000.0 / intervalMillis;
+        double meanHoldMicros = released == 0 ? 0 : (double) (holdSum - lastHoldSum) / released;
+        double meanWaitMicros = acquired == 0 ? 0 : (double) (acquireSum - lastAcquireSum) / acquired;
+        HikariPoolMXBean pool = hikari.getHikariPoolMXBean();
+        int awaiting = pool == null ? 0 : pool.getThreadsAwaitingConnection();
+
+        lastAcquireCount = acquireCount;
+        lastAcquireSum = acquireSum;
+        lastHoldCount = holdCount;
+        lastHoldSum = holdSum;
+        long newTimeouts = timeouts - lastTimeouts;
+        lastTimeouts = timeouts;
+
+        int current = getCurrentSize();
+        int next = evaluate(current, arrivalsPerSecond, meanHoldMicros, meanWaitMicros, awaiting, newTimeouts);
+        if (next != current) {
+            resize(next);
+            log.info("풀 크기 {} -> {} (arrivals/s={} hold(us)={} wait(us)={} awaiting={} timeouts={} estimate={})",
+                    current, next, String.format("%.1f", arrivalsPerSecond), String.format("%.0f", meanHoldMicros),
+                    String.format("%.0f", meanWaitMicros), awaiting, newTimeouts, lastEstimate);
+        }
+    }
+
+    /**
+     * maximumPoolSize 를 바꾼다. minimumIdle 이 새 크기보다 작아야 housekeeper 가 남는 커넥션을 닫는다.
+     */
+    void resize(int next) {
+        HikariConfigMXBean config = hikari.getHikariConfigMXBean();
+        if (config.getMinimumIdle() >= next) {
+            config.setMinimumIdle(next - 1);
+        }
+        config.setMaximumPoolSize(next);
+    }
+
+    /**
+     * 한 구간의 숫자로 다음 크기를 정한다. 연속 구간 수(hysteresis)도 여기서 센다.
+     */
+    int evaluate(int current, double arrivalsPerSecond, double meanHoldMicros, double meanWaitMicros,
+                 int awaiting, long newTimeouts) {
+        int estimate = (int) Math.ceil(arrivalsPerSecond * meanHoldMicros / 1_000_000 * HEADROOM);
+        lastEstimate = estimate;
+
+        boolean pressure = meanWaitMicros > targetWaitMicros || awaiting > 0 || newTimeouts > 0;
+        boolean slack = meanWaitMicros < targetWaitMicros / 4.0 && awaiting == 0 && estimate * 1.5 < current;
+        pressureStreak = pressure ? pressureStreak + 1 : 0;
+        slackStreak = slack ? slackStreak + 1 : 0;
+
+        if (cooldown > 0 && newTimeouts == 0) {
+            cooldown--;
+            return current;
+        }
+
+        int next = current;
+        if (newTimeouts > 0 || pressureStreak >= INCREASE_STREAK) {
+            next = Math.min(maxSize, Math.max(current + increaseStep, estimate));
+        } else if (slackStreak >= DECREASE_STREAK) {
+            next = Math.max(minSize, Math.max((int) Math.ceil(current * DECREASE_FACTOR), estimate));
+        }
+        next = Math.max(minSize, Math.min(maxSize, next));
+
+        if (next > current) {
+            increases.increment();
+        } else if (next < current) {
+            decreases.increment();
+        }
+        if (next != current) {
+            pressureStreak = 0;
+            slackStreak = 0;
+            cooldown = COOLDOWN;
+        }
+        return next;
+    }
+
+    public int getCurrentSize() {
+        return hikari.getHikariConfigMXBean().getMaximumPoolSize();
+    }
+
+    /** 마지막 구간의 Little's law 추정치 */
+    public int getLastEstimate() {
+        return lastEstimate;
+    }
+
+    public long getIncreaseCount() {
+        return increases.sum();
+    }
+
+    public long getDecreaseCount() {
+        return decreases.sum();
+    }
+
+    @Override
+    public String toString() {
+        return "AdaptivePoolSizer{size=" + getCurrentSize()
+                + ", bounds=[" + minSize + ", " + maxSize + "]"
+                + ", estimate=" + getLastEstimate()
+                + ", increases=" + getIncreaseCount()
+                + ", decreases=" + getDecreaseCount()
+                + '}';
+    }
+
+    @Override
+    public void close() {
+        scheduler.shutdownNow();
+    }
+}
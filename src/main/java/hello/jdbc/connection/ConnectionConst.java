@@ -4,4 +4,10 @@ public abstract class ConnectionConst {
     public static final String URL = "jdbc:h2:tcp://localhost/~/test";
     public static final String USERNAME = "sa";
     public static final String PASSWORD ="";
+
+    //DBConnectionUtil 이 쓰는 풀 설정
+    public static final int POOL_MAXIMUM_SIZE = 10;
+    public static final int POOL_MINIMUM_IDLE = 2;
+    public static final long POOL_IDLE_TIMEOUT_MILLIS = 60_000;
+    public static final long POOL_CONNECTION_TIMEOUT_MILLIS = 30_000;
 }
@@ -3,22 +3,37 @@ package hello.jdbc.connection;
 import lombok.extern.slf4j.Slf4j;
 
 import java.sql.Connection;
-import java.sql.DriverManager;
 import java.sql.SQLException;
 
 import static hello.jdbc.connection.ConnectionConst.*;
 
 @Slf4j
 public class DBConnectionUtil {
+
+    /**
+     * 매번 DriverManager 로 새 커넥션(TCP 연결 + H2 세션)을 만들지 않고 풀에서 빌린다.
+     * 처음 getConnection 을 부를 때 만들어진다. (holder 클래스 초기화는 JVM 이 한번만 한다)
+     * 만들 때 POOL_MINIMUM_IDLE 개를 미리 연결해 두니 그 다음 요청부터는 DriverManager 를 기다리지 않는다.
+     * 받은 커넥션을 close() 하면 풀에 반납된다. 쓰는 쪽 코드(MemberRepositoryV0)는 그대로다.
+     */
+    private static class PoolHolder {
+        private static final SimpleConnectionPool POOL = new SimpleConnectionPool(URL, USERNAME, PASSWORD,
+                POOL_MAXIMUM_SIZE, POOL_MINIMUM_IDLE, POOL_IDLE_TIMEOUT_MILLIS, POOL_CONNECTION_TIMEOUT_MILLIS);
+    }
+
     public static Connection getConnection(){
         try {
-            Connection connection = DriverManager.getConnection(URL, USERNAME, PASSWORD);       //데이터베이스에 연결.
+            Connection connection = PoolHolder.POOL.getConnection();       //데이터베이스에 연결.
             //반환 된것은 connection인데 이건 인터페이스다. 뭔가 구현체를 가져온것이겠지
             log.info("get connection ={}, class={}", connection, connection.getClass());
             return connection;
         } catch (SQLException e) {
-            //체크 익셉션을 런타임 익셉션으로 던진다.
-            throw new IllegalStateException();
+            //체크 익셉션을 런타임 익셉션으로 던진다. 원인은 꼭 같이 넘긴다.
+            throw new IllegalStateException("커넥션 획득 실패 url=" + URL, e);
         }
     }
+
+    public static SimpleConnectionPool getPool() {
+        return PoolHolder.POOL;
+    }
 }
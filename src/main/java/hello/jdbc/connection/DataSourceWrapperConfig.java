@@ -0,0 +1,112 @@
+package hello.jdbc.connection;
+
+import org.springframework.beans.factory.config.DestructionAwareBeanPostProcessor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+
+import javax.sql.DataSource;
+
+/**
+ * 스프링 부트가 만든 DataSource(빈 이름 dataSource)를 설정에 따라 감싼다. 리포지토리, 트랜잭션 매니저는 감싼 쪽을 주입 받으니 코드는 안 바뀐다.
+ *
+ * - member.datasource.metrics.enabled=true : InstrumentedDataSource 로 감싼다.
+ * - member.datasource.leak-detection.enabled=true : LeakDetectingDataSource 로 감싼다.
+ *
+ * 둘 다 켜면 InstrumentedDataSource -> LeakDetectingDataSource -> 풀 순서다.
+ * AdaptivePoolConfig 가 켜져 있으면 dataSource 가 이미 InstrumentedDataSource 라서 또 감싸지 않고, 누수 검사만 그 안쪽에 끼운다.
+ */
+@Configuration
+@ConditionalOnExpression("${member.datasource.metrics.enabled:false} or ${member.datasource.leak-detection.enabled:false}")
+public class DataSourceWrapperConfig {
+
+    //BeanPostProcessor 는 다른 빈보다 먼저 만들어야 해서 static 으로 등록한다.
+    @Bean
+    static DataSourceWrapper dataSourceWrapper(Environment environment) {
+        return new DataSourceWrapper(
+                environment.getProperty("member.datasource.metrics.enabled", Boolean.class, false),
+                environment.getProperty("member.datasource.metrics.summary-interval-millis", Long.class, 60_000L),
+                environment.getProperty("member.datasource.leak-detection.enabled", Boolean.class, false),
+                environment.getProperty("member.datasource.leak-detection.threshold-millis", Long.class, 30_000L),
+                environment.getProperty("member.datasource.leak-detection.sample-rate", Double.class, 0.01));
+    }
+
+    static class DataSourceWrapper implements DestructionAwareBeanPostProcessor {
+
+        private static final String DATA_SOURCE_BEAN = "dataSource";
+
+        private final boolean metrics;
+        private final long summaryIntervalMillis;
+        private final boolean leakDetection;
+        private final long leakThresholdMillis;
+        private final double leakSampleRate;
+
+        private Object exposed;
+        private DataSource original;
+        private LeakDetectingDataSource leakDetector;
+
+        DataSourceWrapper(boolean metrics, long summaryIntervalMillis,
+                          boolean leakDetection, long leakThresholdMillis, double leakSampleRate) {
+            this.metrics = metrics;
+            this.summaryIntervalMillis = summaryIntervalMillis;
+            this.leakDetection = leakDetection;
+            this.leakThresholdMillis = leakThresholdMillis;
+            this.leakSampleRate = leakSampleRate;
+        }
+
+        @Override
+        public Object postProcessAfterInitialization(Object bean, String beanName) {
+            if (!DATA_SOURCE_BEAN.equals(beanName) || !(bean instanceof DataSource)) {
+                return bean;
+            }
+            if (bean instanceof InstrumentedDataSource) {
+                //AdaptivePoolConfig 가 만든 것. 감싸는 건 그대로 두고 안쪽에만 끼운다.
+                InstrumentedDataSource instrumented = (InstrumentedDataSource) bean;
+                if (leakDetection) {
+                    leakDetector = new LeakDetectingDataSource(instrumented.getTargetDataSource(), leakThresholdMillis, leakSampleRate);
+                    instrumented.setTargetDataSource(leakDetector);
+                }
+                exposed = instrumented;
+                return instrumented;
+            }
+            original = (DataSource) bean;
+            DataSource dataSource = original;
+            if (leakDetection) {
+                leakDetector = new LeakDetectingDataSource(dataSource, leakThresholdMillis, leakSampleRate);
+                dataSource = leakDetector;
+            }
+            if (metrics) {
+                dataSource = new InstrumentedDataSource(dataSource, summaryIntervalMillis);
+            }
+            exposed = dataSource;
+            return dataSource;
+        }
+
+        /**
+         * 스프링은 빈을 바꿔치기하면 바뀐 쪽(바깥 래퍼)의 close 만 부른다. 래퍼는 감싼 DataSource 를 안 닫으니
+         * 안쪽 누수 검사 스레드와 원래 풀은 여기서 닫는다.
+         */
+        @Override
+        public void postProcessBeforeDestruction(Object bean, String beanName) {
+            if (bean != exposed) {
+                return;
+            }
+            if (leakDetector != null) {
+                leakDetector.close();
+            }
+            if (original instanceof AutoCloseable) {
+                try {
+                    ((AutoCloseable) original).close();
+                } catch (Exception e) {
+                    throw new IllegalStateException("DataSource 종료 실패", e);
+                }
+            }
+        }
+
+        @Override
+        public boolean requiresDestruction(Object bean) {
+            return bean != null && bean == exposed;
+        }
+    }
+}
@@ -0,0 +1,196 @@
+package hello.jdbc.connection;
+
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.HikariPoolMXBean;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 커넥션 획득/사용 시간을 재는 DataSource 래퍼. 풀 크기를 감이 아니라 숫자로 정하려고 쓴다.
+ *
+ * - 획득 시간(acquire) : getConnection 에 들어가서 커넥션을 받을 때까지. 풀이 모자라면 여기가 길어진다.
+ * - 사용 시간(hold) : 커넥션을 받고 close(반납)할 때까지. 트랜잭션이 길면 여기가 길어진다.
+ * - 대기 깊이(wait depth) : getConnection 에 들어갈 때 이미 기다리고 있던 스레드 수.
+ * - 타임아웃 : 풀 고갈로 커넥션을 못 받은 수. (SQLTransientConnectionException - Hikari, SimpleConnectionPool)
+ *
+ * 시간은 마이크로초로 LatencyHistogram 에 기록한다. (락 없음)
+ * summaryIntervalMillis 를 주면 그 주기로 요약을 INFO 로 남긴다. Hikari 면 풀 상태(active/idle/대기 스레드)도 같이 찍는다.
+ *
+ * 스프링 부트에서는 member.datasource.metrics.enabled=true 로 켠다. (DataSourceWrapperConfig)
+ */
+@Slf4j
+public class InstrumentedDataSource extends DelegatingDataSource implements AutoCloseable {
+
+    private final LatencyHistogram acquireMicros = new LatencyHistogram();
+    private final LatencyHistogram holdMicros = new LatencyHistogram();
+    private final LatencyHistogram waitDepth = new LatencyHistogram();
+
+    private final AtomicInteger waiting = new AtomicInteger();
+    private final AtomicInteger active = new AtomicInteger();
+    private final LongAdder timeouts = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+
+    private final ScheduledExecutorService reporter;
+
+    public InstrumentedDataSource(DataSource target) {
+        this(target, 0);
+    }
+
+    public InstrumentedDataSource(DataSource target, long summaryIntervalMillis) {
+        super(target);
+        if (summaryIntervalMillis > 0) {
+            reporter = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread thread = new Thread(r, "datasource-metrics");
+                thread.setDaemon(true);
+                return thread;
+            });
+            reporter.scheduleAtFixedRate(this::logSummary, summaryIntervalMillis, summaryIntervalMillis, TimeUnit.MILLISECONDS);
+        } else {
+            reporter = null;
+        }
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        return instrument(null, null);
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        return instrument(username, password);
+    }
+
+    private Connection instrument(String username, String password) throws SQLException {
+        waitDepth.record(waiting.getAndIncrement());
+        long start = System.nanoTime();
+        Connection con;
+        try {
+            con = username == null ? obtainTargetDataSource().getConnection()
+                    : obtainTargetDataSource().getConnection(username, password);
+        } catch (SQLTransientConnectionException e) {
+            timeouts.increment();
+            throw e;
+        } catch (SQLException | RuntimeException e) {
+            failures.increment();
+            throw e;
+        } finally {
+            waiting.decrementAndGet();
+        }
+        long acquired = System.nanoTime();
+        acquireMicros.record(TimeUnit.NANOSECONDS.toMicros(acquired - start));
+        active.incrementAndGet();
+        return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+                new Class<?>[]{Connection.class}, new HoldTimer(con, acquired));
+    }
+
+    /**
+     * close 할 때 사용 시간을 기록한다. 두번 close 해도 한번만 기록한다.
+     */
+    private class HoldTimer implements InvocationHandler {
+        private final Connection target;
+        private final long acquiredNanos;
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        private HoldTimer(Connection target, long acquiredNanos) {
+            this.target = target;
+            this.acquiredNanos = acquiredNanos;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            if ("close".equals(method.getName()) && released.compareAndSet(false, true)) {
+                holdMicros.record(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - acquiredNanos));
+                active.decrementAndGet();
+            } else if ("equals".equals(method.getName())) {
+                return proxy == args[0];
+            } else if ("hashCode".equals(method.getName())) {
+                return System.identityHashCode(proxy);
+            }
+            try {
+                return method.invoke(target, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }
+    }
+
+    public LatencyHistogram getAcquireHistogram() {
+        return acquireMicros;
+    }
+
+    public LatencyHistogram getHoldHistogram() {
+        return holdMicros;
+    }
+
+    public LatencyHistogram getWaitDepthHistogram() {
+        return waitDepth;
+    }
+
+    /** 지금 getConnection 에서 기다리는 스레드 수 */
+    public int getWaitingCount() {
+        return waiting.get();
+    }
+
+    /** 이 래퍼로 빌려가서 아직 반납 안 된 커넥션 수 */
+    public int getActiveCount() {
+        return active.get();
+    }
+
+    /** 풀 고갈로 커넥션을 못 받은 수 */
+    public long getTimeoutCount() {
+        return timeouts.sum();
+    }
+
+    public long getFailureCount() {
+        return failures.sum();
+    }
+
+    public void logSummary() {
+        log.info("datasource acquire(us) [{}] hold(us) [{}] waitDepth [{}] timeouts={} failures={}{}",
+                acquireMicros, holdMicros, waitDepth, getTimeoutCount(), getFailureCount(), poolState());
+    }
+
+    //LeakDetectingDataSource 같은 래퍼 안쪽에 있어도 찾는다.
+    private String poolState() {
+        HikariDataSource hikari;
+        try {
+            if (!isWrapperFor(HikariDataSource.class)) {
+                return "";
+            }
+            hikari = unwrap(HikariDataSource.class);
+        } catch (SQLException e) {
+            return "";
+        }
+        HikariPoolMXBean pool = hikari.getHikariPoolMXBean();
+        if (pool == null) {     //아직 커넥션을 한번도 안 빌렸으면 풀이 없다.
+            return "";
+        }
+        return " pool[active=" + pool.getActiveConnections() + ", idle=" + pool.getIdleConnections()
+                + ", awaiting=" + pool.getThreadsAwaitingConnection() + "]";
+    }
+
+    /**
+     * 요약 로그 주기 작업만 멈춘다. 감싼 DataSource 는 만든 쪽이 닫는다.
+     */
+    @Override
+    public void close() {
+        if (reporter != null) {
+            reporter.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,174 @@
+package hello.jdbc.connection;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 커넥션 누수를 찾는 DataSource 래퍼.
+ * close(con, pstmt, rs) 를 빼먹거나 DataSourceUtils.releaseConnection / release(con) 을 안 부르면 커넥션이 풀로 안 돌아오고,
+ * 이게 쌓이면 풀이 말라서 전부 멈춘다. 어디서 빌린 커넥션인지 알아야 고칠 수 있다.
+ *
+ * 빌려줄 때 sampleRate 확률로 골라서 빌린 곳의 스택을 잡아둔다. (Throwable 하나 - 비싸서 샘플링한다)
+ * leakThresholdMillis 보다 오래 반납 안 된 커넥션은 빌린 곳 스택과 함께 WARN 으로 남긴다. (한 커넥션에 한번)
+ * 보고한 커넥션은 추적 목록에서 뺀다. 끝내 반납 안 되는 커넥션이 있어도 프록시와 스택이 여기 쌓이지 않는다.
+ * 나중에 반납되면 누수가 아니라 오래 쓴 것이니 그것도 남긴다.
+ *
+ * 샘플로 안 뽑힌 커넥션은 감싸지 않고 그대로 준다. sampleRate=0 이면 난수 하나 뽑는 것 말고는 비용이 없다.
+ * 누수는 계속 반복되는 경우가 대부분이라 1% 만 잡아도 금방 보인다.
+ */
+@Slf4j
+public class LeakDetectingDataSource extends DelegatingDataSource implements AutoCloseable {
+
+    private final long leakThresholdMillis;
+    private final double sampleRate;
+
+    private final Map<Object, Borrow> tracked = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService checker;
+
+    private final LongAdder sampled = new LongAdder();
+    private final LongAdder leaks = new LongAdder();
+
+    /**
+     * @param sampleRate 0 ~ 1. 1 이면 전부 추적한다. (테스트, 장애 분석할 때)
+     */
+    public LeakDetectingDataSource(DataSource target, long leakThresholdMillis, double sampleRate) {
+        super(target);
+        if (sampleRate < 0 || sampleRate > 1) {
+            throw new IllegalArgumentException("sampleRate=" + sampleRate);
+        }
+        this.leakThresholdMillis = leakThresholdMillis;
+        this.sampleRate = sampleRate;
+        this.checker = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "connection-leak-checker");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long period = Math.max(100, leakThresholdMillis / 2);
+        checker.scheduleWithFixedDelay(this::checkQuietly, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        return track(obtainTargetDataSource().getConnection());
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        return track(obtainTargetDataSource().getConnection(username, password));
+    }
+
+    private Connection track(Connection con) {
+        if (sampleRate == 0 || ThreadLocalRandom.current().nextDouble() >= sampleRate) {
+            return con;
+        }
+        sampled.increment();
+        Borrow borrow = new Borrow(con);
+        Connection proxy = (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+                new Class<?>[]{Connection.class}, borrow);
+        tracked.put(proxy, borrow);
+        return proxy;
+    }
+
+    /**
+     * 지금 기준으로 leakThreshold 를 넘긴 커넥션을 찾아서 남긴다. 주기 작업이 부르고, 테스트에서 직접 불러도 된다.
+     * @return 이번에 새로 찾은 누수 수
+     */
+    public int checkForLeaks() {
+        long now = System.currentTimeMillis();
+        int found = 0;
+        for (Iterator<Borrow> it = tracked.values().iterator(); it.hasNext(); ) {
+            Borrow borrow = it.next();
+            long held = now - borrow.borrowedAt;
+            //주기 검사와 직접 부른 검사가 겹쳐도 한쪽만 보고한다. 그 사이 반납된 것은 건너뛴다.
+            if (held > leakThresholdMillis && !borrow.returned.get() && borrow.reported.compareAndSet(false, true)) {
+                it.remove();
+                leaks.increment();
+                found++;
+                log.warn("커넥션 누수 의심 - {}ms 동안 반납 안됨 thread={} connection={}",
+                        held, borrow.threadName, borrow.target, borrow.site);
+            }
+        }
+        return found;
+    }
+
+    private void checkQuietly() {
+        try {
+            checkForLeaks();
+        } catch (RuntimeException e) {
+            log.error("커넥션 누수 검사 실패", e);
+        }
+    }
+
+    /** 누수로 보고한 수 */
+    public long getLeakCount() {
+        return leaks.sum();
+    }
+
+    /** 스택을 잡아서 추적한 수 */
+    public long getSampledCount() {
+        return sampled.sum();
+    }
+
+    /** 추적 중에 아직 반납 안 된 수. 누수로 보고한 것은 빠진다. */
+    public int getTrackedCount() {
+        return tracked.size();
+    }
+
+    @Override
+    public void close() {
+        checker.shutdownNow();
+    }
+
+    private class Borrow implements InvocationHandler {
+        private final Connection target;
+        private final long borrowedAt = System.currentTimeMillis();
+        private final String threadName = Thread.currentThread().getName();
+        private final Throwable site = new Throwable("connection acquired here");      //빌린 곳 스택
+        private final AtomicBoolean reported = new AtomicBoolean();
+        private final AtomicBoolean returned = new AtomicBoolean();
+
+        private Borrow(Connection target) {
+            this.target = target;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close":
+                    tracked.remove(proxy);
+                    if (returned.compareAndSet(false, true) && reported.get()) {
+                        log.info("누수로 보고했던 커넥션이 {}ms 만에 반납됨 thread={}", System.currentTimeMillis() - borrowedAt, threadName);
+                    }
+                    break;
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                default:
+                    break;
+            }
+            try {
+                return method.invoke(target, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }
+    }
+}
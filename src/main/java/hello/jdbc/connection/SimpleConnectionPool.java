@@ -0,0 +1,487 @@
+package hello.jdbc.connection;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.datasource.AbstractDataSource;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.SQLTransientConnectionException;
+import java.sql.Statement;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * DriverManager 위에 얹은 가벼운 커넥션 풀. DBConnectionUtil 이 쓴다. (스프링 없이 돌아가는 V0 같은 코드용)
+ *
+ * - 빌리기/반납 : 놀고 있는 커넥션은 ConcurrentLinkedDeque 에 둔다. 락 없이 CAS 로 꺼내고 넣는다.
+ *   최근에 반납된 것부터 쓴다. (LIFO - 자주 쓰는 커넥션만 계속 쓰고 나머지는 놀다가 정리된다)
+ * - 최대 개수 : Semaphore 로 maximumPoolSize 를 넘지 않게 한다. 다 빌려갔으면 connectionTimeout 까지 기다린다.
+ * - 검증 : validationInterval 보다 오래 놀았던 커넥션은 빌려주기 전에 isValid 로 확인한다. (DB 재시작, 네트워크 끊김)
+ * - 미리 채우기 : 만들 때 minimumIdle 개를 미리 만들어 둔다. 첫 사용자가 TCP 연결 + H2 세션 생성을 기다리지 않게.
+ *   DB 가 아직 안 떠 있으면 경고만 남기고 빌릴 때 만든다.
+ * - 정리 : idleTimeout 보다 오래 논 커넥션은 minimumIdle 개만 남기고 닫는다.
+ *
+ * 빌려준 커넥션은 프록시다. close() 하면 물리 커넥션을 닫지 않고 풀에 반납한다.
+ * 반납할 때 auto commit 을 끈 채로 돌려주면 롤백하고 auto commit 을 다시 켠다. (다음 사용자가 이전 트랜잭션을 이어받지 않게)
+ * read only, 격리 수준, catalog 도 빌려간 쪽이 바꿨으면 만들 때의 값으로 되돌린다.
+ * 빌려간 쪽이 안 닫은 Statement 는 반납할 때 닫는다.
+ *
+ * 물리 커넥션은 밖으로 안 나간다. unwrap 은 프록시 자신만 돌려주고, Statement 와 ResultSet 도 감싸서
+ * getConnection(), getStatement() 가 프록시를 돌려준다. (물리 커넥션을 닫거나 반납 후에도 쥐고 있지 못하게)
+ */
+@Slf4j
+public class SimpleConnectionPool extends AbstractDataSource implements AutoCloseable {
+
+    private static final long VALIDATION_INTERVAL_MILLIS = 500;
+    private static final int VALIDATION_TIMEOUT_SECONDS = 1;
+
+    private final String url;
+    private final String username;
+    private final String password;
+    private final int maximumPoolSize;
+    private final int minimumIdle;
+    private final long idleTimeoutMillis;
+    private final long connectionTimeoutMillis;
+
+    private final ConcurrentLinkedDeque<PooledConnection> idle = new ConcurrentLinkedDeque<>();
+    private final Semaphore permits;
+    private final ScheduledExecutorService evictor;
+    private volatile boolean closed;
+
+    private final LongAdder created = new LongAdder();
+    private final LongAdder borrowed = new LongAdder();
+    private final LongAdder evicted = new LongAdder();
+    private final LongAdder invalid = new LongAdder();
+    private final LongAdder timeouts = new LongAdder();
+
+    public SimpleConnectionPool(String url, String username, String password,
+                                int maximumPoolSize, int minimumIdle, long idleTimeoutMillis, long connectionTimeoutMillis) {
+        this.url = url;
+        this.username = username;
+        this.password = password;
+        this.maximumPoolSize = maximumPoolSize;
+        this.minimumIdle = minimumIdle;
+        this.idleTimeoutMillis = idleTimeoutMillis;
+        this.connectionTimeoutMillis = connectionTimeoutMillis;
+        this.permits = new Semaphore(maximumPoolSize);
+
+        this.evictor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "simple-pool-evictor");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long period = Math.max(1000, idleTimeoutMillis / 2);
+        evictor.scheduleWithFixedDelay(this::evictIdle, period, period, TimeUnit.MILLISECONDS);
+        fill();
+    }
+
+    private void fill() {
+        try {
+            for (int i = 0; i < Math.min(minimumIdle, maximumPoolSize); i++) {
+                idle.offerFirst(create());
+            }
+        } catch (SQLException e) {
+            log.warn("커넥션 미리 만들기 실패, 빌릴 때 만든다. idle={}", idle.size(), e);
+        }
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        if (closed) {
+            throw new SQLException("pool is closed");
+        }
+        acquirePermit();
+        try {
+            PooledConnection pooled;
+            while ((pooled = idle.pollFirst()) != null) {
+                if (isUsable(pooled)) {
+                    break;
+                }
+                invalid.increment();
+                closeQuietly(pooled.physical);
+            }
+            if (pooled == null) {
+                pooled = create();
+            }
+            borrowed.increment();
+            return pooled.borrow();
+        } catch (SQLException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    private PooledConnection create() throws SQLException {
+        Connection physical = DriverManager.getConnection(url, username, password);
+        try {
+            PooledConnection pooled = new PooledConnection(physical);
+            created.increment();
+            return pooled;
+        } catch (SQLException e) {
+            closeQuietly(physical);
+            throw e;
+        }
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        throw new SQLFeatureNotSupportedException("풀은 생성할 때 받은 계정만 쓴다.");
+    }
+
+    private void acquirePermit() throws SQLException {
+        if (permits.tryAcquire()) {     //빈 자리가 있으면 기다리지 않는다.
+            return;
+        }
+        try {
+            if (!permits.tryAcquire(connectionTimeoutMillis, TimeUnit.MILLISECONDS)) {
+                timeouts.increment();
+                throw new SQLTransientConnectionException("커넥션 풀 고갈 - " + connectionTimeoutMillis + "ms 동안 반납된 커넥션이 없다. " + this);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLTransientConnectionException("커넥션 대기 중 인터럽트", e);
+        }
+    }
+
+    private boolean isUsable(PooledConnection pooled) {
+        if (System.currentTimeMillis() - pooled.lastReturned < VALIDATION_INTERVAL_MILLIS) {
+            return true;        //방금 반납된 커넥션은 검증하지 않는다.
+        }
+        try {
+            return pooled.physical.isValid(VALIDATION_TIMEOUT_SECONDS);
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    private void giveBack(PooledConnection pooled) {
+        try {
+            pooled.closeStatements();
+            Connection physical = pooled.physical;
+            if (closed || physical.isClosed()) {
+                closeQuietly(physical);
+                return;
+            }
+            if (!physical.getAutoCommit()) {
+                physical.rollback();
+                physical.setAutoCommit(true);
+            }
+            pooled.resetState();
+            pooled.lastReturned = System.currentTimeMillis();
+            idle.offerFirst(pooled);
+        } catch (SQLException e) {
+            log.warn("반납 중 커넥션 정리 실패, 버린다 connection={}", pooled.physical, e);
+            closeQuietly(pooled.physical);
+        } finally {
+            permits.release();
+        }
+    }
+
+    /**
+     * evictor 가 주기적으로 부른다. 테스트에서는 직접 부른다.
+     */
+    void evictIdle() {
+        long now = System.currentTimeMillis();
+        //오래 논 커넥션은 뒤쪽에 있다.
+        for (Iterator<PooledConnection> it = idle.descendingIterator(); it.hasNext(); ) {
+            PooledConnection pooled = it.next();
+            if (idle.size() <= minimumIdle) {
+                return;
+            }
+            if (now - pooled.lastReturned > idleTimeoutMillis && idle.removeLastOccurrence(pooled)) {
+                evicted.increment();
+                closeQuietly(pooled.physical);
+            }
+        }
+    }
+
+    private static void closeQuietly(Connection physical) {
+        try {
+            physical.close();
+        } catch (SQLException e) {
+            log.info("커넥션 닫기 실패", e);
+        }
+    }
+
+    public int getIdleCount() {
+        return idle.size();
+    }
+
+    /** 지금 빌려간 커넥션 수 (빌리는 중인 것 포함) */
+    public int getActiveCount() {
+        return maximumPoolSize - permits.availablePermits();
+    }
+
+    public int getMaximumPoolSize() {
+        return maximumPoolSize;
+    }
+
+    public long getCreatedCount() {
+        return created.sum();
+    }
+
+    public long getBorrowedCount() {
+        return borrowed.sum();
+    }
+
+    public long getEvictedCount() {
+        return evicted.sum();
+    }
+
+    public long getInvalidCount() {
+        return invalid.sum();
+    }
+
+    public long getTimeoutCount() {
+        return timeouts.sum();
+    }
+
+    @Override
+    public String toString() {
+        return "SimpleConnectionPool{idle=" + getIdleCount()
+                + ", active=" + getActiveCount()
+                + ", created=" + getCreatedCount()
+                + ", borrowed=" + getBorrowedCount()
+                + ", evicted=" + getEvictedCount()
+                + ", timeouts=" + getTimeoutCount()
+                + '}';
+    }
+
+    /**
+     * 놀고 있는 커넥션을 닫는다. 빌려간 커넥션은 반납될 때 닫힌다.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        evictor.shutdownNow();
+        PooledConnection pooled;
+        while ((pooled = idle.pollFirst()) != null) {
+            closeQuietly(pooled.physical);
+        }
+    }
+
+    private class PooledConnection {
+        private final Connection physical;
+        private volatile long lastReturned = System.currentTimeMillis();
+
+        //만들 때의 값. 빌려간 쪽이 바꾼 것만 반납할 때 되돌린다. (매번 get 하면 DB 왕복이 늘어난다)
+        private final boolean defaultReadOnly;
+        private final int defaultIsolation;
+        private final String defaultCatalog;
+        private boolean readOnlyDirty;
+        private boolean isolationDirty;
+        private boolean catalogDirty;
+
+        //이번에 빌려간 쪽이 만들고 아직 안 닫은 Statement
+        private final Set<Statement> openStatements = ConcurrentHashMap.newKeySet();
+
+        private PooledConnection(Connection physical) throws SQLException {
+            this.physical = physical;
+            this.defaultReadOnly = physical.isReadOnly();
+            this.defaultIsolation = physical.getTransactionIsolation();
+            this.defaultCatalog = physical.getCatalog();
+        }
+
+        private void markDirty(String setter) {
+            switch (setter) {
+                case "setReadOnly":
+                    readOnlyDirty = true;
+                    break;
+                case "setTransactionIsolation":
+                    isolationDirty = true;
+                    break;
+                case "setCatalog":
+                    catalogDirty = true;
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        //auto commit 을 되돌린 다음에 부른다. 트랜잭션 중에는 read only 를 못 바꾸는 드라이버가 있다.
+        private void resetState() throws SQLException {
+            if (readOnlyDirty) {
+                physical.setReadOnly(defaultReadOnly);
+                readOnlyDirty = false;
+            }
+            if (isolationDirty) {
+                physical.setTransactionIsolation(defaultIsolation);
+                isolationDirty = false;
+            }
+            if (catalogDirty) {
+                if (defaultCatalog != null) {
+                    physical.setCatalog(defaultCatalog);
+                }
+                catalogDirty = false;
+            }
+        }
+
+        private void closeStatements() {
+            for (Statement statement : openStatements) {
+                try {
+                    statement.close();
+                } catch (SQLException e) {
+                    log.info("Statement 닫기 실패", e);
+                }
+            }
+            openStatements.clear();
+        }
+
+        private Connection borrow() {
+            return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+                    new Class<?>[]{Connection.class}, new Handle(this));
+        }
+    }
+
+    /**
+     * 빌려준 커넥션 하나. close 는 한번만 반납하고, 반납 후에는 쓸 수 없다.
+     */
+    private class Handle implements InvocationHandler {
+        private final PooledConnection pooled;
+        private final AtomicBoolean returned = new AtomicBoolean();
+
+        private Handle(PooledConnection pooled) {
+            this.pooled = pooled;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close":
+                    if (returned.compareAndSet(false, true)) {
+                        giveBack(pooled);
+                    }
+                    return null;
+                case "isClosed":
+                    return returned.get() || pooled.physical.isClosed();
+                case "toString":
+                    return "Pooled[" + pooled.physical + "]";
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "unwrap":
+                    return unwrapProxy(proxy, (Class<?>) args[0]);
+                case "isWrapperFor":
+                    return ((Class<?>) args[0]).isInstance(proxy);
+                default:
+                    break;
+            }
+            if (returned.get()) {
+                throw new SQLException("이미 풀에 반납된 커넥션이다.");
+            }
+            pooled.markDirty(method.getName());
+            Object result = invokeTarget(pooled.physical, method, args);
+            if (result instanceof Statement) {     //createStatement, prepareStatement, prepareCall
+                Statement statement = (Statement) result;
+                pooled.openStatements.add(statement);
+                return Proxy.newProxyInstance(Connection.class.getClassLoader(),
+                        new Class<?>[]{method.getReturnType()}, new StatementHandle(pooled, statement, (Connection) proxy));
+            }
+            return result;
+        }
+    }
+
+    /**
+     * 빌려준 커넥션으로 만든 Statement. getConnection 은 커넥션 프록시를 돌려주고, close 하면 추적에서 뺀다.
+     */
+    private static class StatementHandle implements InvocationHandler {
+        private final PooledConnection pooled;
+        private final Statement target;
+        private final Connection connection;
+
+        private StatementHandle(PooledConnection pooled, Statement target, Connection connection) {
+            this.pooled = pooled;
+            this.target = target;
+            this.connection = connection;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "getConnection":
+                    return connection;
+                case "close":
+                    pooled.openStatements.remove(target);
+                    break;
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "unwrap":
+                    return unwrapProxy(proxy, (Class<?>) args[0]);
+                case "isWrapperFor":
+                    return ((Class<?>) args[0]).isInstance(proxy);
+                default:
+                    break;
+            }
+            Object result = invokeTarget(target, method, args);
+            if (result instanceof ResultSet) {     //executeQuery, getResultSet, getGeneratedKeys
+                return Proxy.newProxyInstance(Connection.class.getClassLoader(),
+                        new Class<?>[]{ResultSet.class}, new ResultSetHandle((ResultSet) result, (Statement) proxy));
+            }
+            return result;
+        }
+    }
+
+    /**
+     * getStatement 가 Statement 프록시를 돌려주게만 한다.
+     */
+    private static class ResultSetHandle implements InvocationHandler {
+        private final ResultSet target;
+        private final Statement statement;
+
+        private ResultSetHandle(ResultSet target, Statement statement) {
+            this.target = target;
+            this.statement = statement;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "getStatement":
+                    return statement;
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "unwrap":
+                    return unwrapProxy(proxy, (Class<?>) args[0]);
+                case "isWrapperFor":
+                    return ((Class<?>) args[0]).isInstance(proxy);
+                default:
+                    return invokeTarget(target, method, args);
+            }
+        }
+    }
+
+    private static Object unwrapProxy(Object proxy, Class<?> iface) throws SQLException {
+        if (iface.isInstance(proxy)) {
+            return proxy;
+        }
+        throw new SQLException("풀에서 빌린 객체는 " + iface.getName() + " 로 벗길 수 없다.");
+    }
+
+    private static Object invokeTarget(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+}
@@ -0,0 +1,161 @@
+package hello.jdbc.connection;
+
+import com.zaxxer.hikari.HikariDataSource;
+import hello.jdbc.domain.Member;
+import hello.jdbc.repository.MemberRepository;
+import hello.jdbc.repository.MemberRepositoryV4_1;
+import hello.jdbc.repository.MemberRepositoryV4_2;
+import hello.jdbc.repository.MemberRepositoryV5;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+import org.springframework.jdbc.support.SQLErrorCodes;
+import org.springframework.jdbc.support.SQLErrorCodesFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 애플리케이션 시작 때 한번 돌리는 워밍업. 배포 직후 첫 요청들이 느린 것(p99 튐)을 없앤다.
+ *
+ * 1. 풀 채우기 : 커넥션을 동시에 connections 개 빌려서 검증하고 반납한다. Hikari 는 필요할 때 채우기 때문에
+ *    이걸 안하면 첫 요청들이 TCP 연결 + H2 세션 생성을 기다린다.
+ * 2. 리포지토리 SQL : 빌린 커넥션마다 V4_1, V4_2, V5 의 SQL 을 한번씩 실행하고 롤백한다.
+ *    H2 는 파싱한 SQL 을 세션(커넥션)별로 캐시하기 때문에 커넥션 하나만 돌리면 나머지는 첫 요청 때 다시 파싱한다.
+ *    JVM 쪽 클래스 로딩과 JIT 도 같이 된다. 롤백이라 데이터는 안 바뀐다.
+ * 3. 예외 변환기 : SQLErrorCodesFactory 가 DB 메타데이터로 에러 코드를 찾아서 DataSource 별로 캐시해 둔다.
+ *    MemberRepositoryV4_2, JdbcTemplate 의 첫 예외 변환이 이걸 기다리지 않게 미리 부른다.
+ *
+ * ApplicationRunner 라서 스프링 부트는 이게 끝난 다음에 readiness 를 ACCEPTING_TRAFFIC 으로 바꾼다.
+ * 워밍업이 실패해도 애플리케이션은 뜬다. (첫 요청이 느릴 뿐이다) 끄려면 member.warmup.enabled=false
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(prefix = "member.warmup", name = "enabled", havingValue = "true", matchIfMissing = true)
+public class StartupWarmUp implements ApplicationRunner {
+
+    private static final String WARM_UP_MEMBER_ID = "warmup";
+
+    private final DataSource dataSource;
+    private final int connections;
+
+    /**
+     * @param connections 미리 만들 커넥션 수. 0 이면 Hikari 의 minimumIdle 만큼
+     */
+    public StartupWarmUp(DataSource dataSource, @Value("${member.warmup.connections:0}") int connections) {
+        this.dataSource = dataSource;
+        this.connections = targetConnections(dataSource, connections);
+    }
+
+    //풀 최대 크기보다 많이 빌리면 남는 스레드가 connectionTimeout 까지 기다리기만 한다.
+    private static int targetConnections(DataSource dataSource, int connections) {
+        HikariDataSource hikari = unwrapHikari(dataSource);
+        if (hikari != null) {
+            int target = connections > 0 ? connections : hikari.getMinimumIdle();
+            return Math.max(1, Math.min(target, hikari.getMaximumPoolSize()));
+        }
+        return Math.max(1, connections);
+    }
+
+    //InstrumentedDataSource 같은 래퍼 안에 있어도 찾는다.
+    private static HikariDataSource unwrapHikari(DataSource dataSource) {
+        try {
+            return dataSource.isWrapperFor(HikariDataSource.class) ? dataSource.unwrap(HikariDataSource.class) : null;
+        } catch (SQLException e) {
+            return null;
+        }
+    }
+
+    @Override
+    public void run(ApplicationArguments args) {
+        long start = System.nanoTime();
+        try {
+            fillPool();
+            SQLErrorCodes errorCodes = SQLErrorCodesFactory.getInstance().getErrorCodes(dataSource);
+            log.info("워밍업 - 예외 변환 에러 코드 로딩 database={}", errorCodes.getDatabaseProductName());
+            log.info("워밍업 완료 connections={} {}ms", connections, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        } catch (Exception e) {
+            log.warn("워밍업 실패, 그대로 시작한다. {}ms", TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start), e);
+        }
+    }
+
+    /**
+     * 모든 스레드가 커넥션을 쥔 상태에서 같이 반납해야 풀이 connections 개를 다 만든다.
+     * (하나씩 빌리고 바로 반납하면 같은 커넥션만 계속 돌려받는다)
+     * 쥐고 있는 동안 그 커넥션으로 리포지토리 SQL 을 돌린다.
+     */
+    private void fillPool() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(connections);
+        CountDownLatch allBorrowed = new CountDownLatch(connections);
+        List<Future<?>> futures = new ArrayList<>();
+        try {
+            for (int i = 0; i < connections; i++) {
+                String memberId = WARM_UP_MEMBER_ID + i;
+                futures.add(executor.submit(() -> {
+                    try (Connection con = dataSource.getConnection()) {
+                        allBorrowed.countDown();
+                        if (!con.isValid(1)) {
+                            throw new SQLException("검증 실패 connection=" + con);
+                        }
+                        primeRepositories(con, memberId);
+                        allBorrowed.await(30, TimeUnit.SECONDS);
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        log.info("워밍업 - 커넥션 {}개 생성/검증, 리포지토리 SQL 실행 후 롤백", connections);
+    }
+
+    /**
+     * 빌린 커넥션 하나로만 도는 DataSource 를 리포지토리에 준다. close 는 무시하니 커넥션은 fillPool 이 반납한다.
+     * 커넥션마다 회원 id 를 다르게 써서 동시에 도는 워밍업끼리 행 락을 기다리지 않게 한다.
+     */
+    private static void primeRepositories(Connection con, String memberId) {
+        DataSource single = new SingleConnectionDataSource(con, true);
+        TransactionTemplate txTemplate = new TransactionTemplate(new DataSourceTransactionManager(single));
+        List<MemberRepository> repositories = List.of(
+                new MemberRepositoryV4_1(single), new MemberRepositoryV4_2(single), new MemberRepositoryV5(single));
+        for (MemberRepository repository : repositories) {
+            txTemplate.executeWithoutResult(status -> {
+                status.setRollbackOnly();       //전부 롤백한다.
+                prime(repository, memberId);
+            });
+        }
+    }
+
+    private static void prime(MemberRepository repository, String memberId) {
+        Member member = new Member(memberId, 0);
+        repository.findOptional(memberId);
+        repository.exists(memberId);
+        repository.trySave(member);
+        repository.upsert(member);
+        repository.findById(memberId);
+        repository.findByIdForUpdate(memberId);
+        repository.findAllById(List.of(memberId));
+        repository.findPage(null, 1);
+        repository.update(memberId, 0);
+        repository.credit(memberId, 0);
+        repository.debit(memberId, 0);
+        repository.delete(memberId);
+    }
+}
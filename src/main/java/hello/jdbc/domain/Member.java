@@ -6,6 +6,7 @@ import lombok.Data;
 public class Member {
     private String memberId;
     private int money;
+    private long version;       //낙관적 락 버전. version 컬럼을 쓰는 메서드(findByIdWithVersion)만 채운다.
 
     public Member(){
 
@@ -14,4 +15,14 @@ public class Member {
         this.memberId = memberId;
         this.money = money;
     }
+
+    /**
+     * 필드를 전부 복사한 새 객체. Member 는 가변이라 캐시나 여러 호출자에게 나눠줄 때 쓴다.
+     * 필드를 추가하면 여기도 같이 고친다.
+     */
+    public static Member copyOf(Member member) {
+        Member copy = new Member(member.memberId, member.money);
+        copy.version = member.version;
+        return copy;
+    }
 }
@@ -0,0 +1,37 @@
+package hello.jdbc.domain;
+
+import lombok.Getter;
+import lombok.ToString;
+
+import java.util.List;
+
+/**
+ * 회원 목록 한 페이지. (키셋 페이지네이션)
+ * continuationToken 은 이 페이지의 마지막 memberId 다. 다음 페이지를 읽을 때 그대로 넘긴다. 마지막 페이지면 null.
+ */
+@Getter
+@ToString
+public class MemberPage {
+    private final List<Member> members;
+    private final String continuationToken;
+
+    private MemberPage(List<Member> members, String continuationToken) {
+        this.members = members;
+        this.continuationToken = continuationToken;
+    }
+
+    /**
+     * @param rows limit + 1 건까지 읽은 결과. limit 보다 많으면 다음 페이지가 있다는 뜻이고, 넘치는 한 건은 버린다.
+     */
+    public static MemberPage of(List<Member> rows, int limit) {
+        if (rows.size() <= limit) {
+            return new MemberPage(rows, null);
+        }
+        List<Member> members = rows.subList(0, limit);
+        return new MemberPage(members, members.get(limit - 1).getMemberId());
+    }
+
+    public boolean hasNext() {
+        return continuationToken != null;
+    }
+}
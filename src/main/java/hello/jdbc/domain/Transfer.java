@@ -0,0 +1,22 @@
+package hello.jdbc.domain;
+
+import lombok.Data;
+
+/**
+ * 이체 요청 한 건 - fromId 에서 toId 로 money 만큼
+ */
+@Data
+public class Transfer {
+    private String fromId;
+    private String toId;
+    private int money;
+
+    public Transfer(){
+
+    }
+    public Transfer(String fromId, String toId, int money) {
+        this.fromId = fromId;
+        this.toId = toId;
+        this.money = money;
+    }
+}
@@ -0,0 +1,29 @@
+package hello.jdbc.domain;
+
+import lombok.Getter;
+import lombok.ToString;
+
+/**
+ * 이체 한 건의 처리 결과. 실패하면 failReason 에 이유가 들어간다.
+ */
+@Getter
+@ToString
+public class TransferResult {
+    private final Transfer transfer;
+    private final boolean success;
+    private final String failReason;
+
+    private TransferResult(Transfer transfer, boolean success, String failReason) {
+        this.transfer = transfer;
+        this.success = success;
+        this.failReason = failReason;
+    }
+
+    public static TransferResult success(Transfer transfer) {
+        return new TransferResult(transfer, true, null);
+    }
+
+    public static TransferResult fail(Transfer transfer, String failReason) {
+        return new TransferResult(transfer, false, failReason);
+    }
+}
@@ -0,0 +1,127 @@
+package hello.jdbc.repository;
+
+import hello.jdbc.domain.Member;
+import hello.jdbc.domain.MemberPage;
+import hello.jdbc.domain.Transfer;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * 다른 MemberRepository 로 그대로 넘기는 데코레이터 기본 클래스.
+ * 캐시 같은 기능을 V4_1, V4_2, V5 어느 구현체에든 씌울 수 있다. 필요한 메서드만 오버라이드하면 된다.
+ */
+public class DelegatingMemberRepository implements MemberRepository {
+
+    private final MemberRepository target;
+
+    public DelegatingMemberRepository(MemberRepository target) {
+        this.target = target;
+    }
+
+    public MemberRepository getTarget() {
+        return target;
+    }
+
+    @Override
+    public Member save(Member member) {
+        return target.save(member);
+    }
+
+    @Override
+    public List<Member> saveAll(Collection<Member> members, int batchSize) {
+        return target.saveAll(members, batchSize);
+    }
+
+    @Override
+    public SaveResult trySave(Member member) {
+        return target.trySave(member);
+    }
+
+    @Override
+    public Member upsert(Member member) {
+        return target.upsert(member);
+    }
+
+    @Override
+    public List<Member> upsertAll(Collection<Member> members, int batchSize) {
+        return target.upsertAll(members, batchSize);
+    }
+
+    @Override
+    public Member findById(String memberId) {
+        return target.findById(memberId);
+    }
+
+    @Override
+    public Optional<Member> findOptional(String memberId) {
+        return target.findOptional(memberId);
+    }
+
+    @Override
+    public boolean exists(String memberId) {
+        return target.exists(memberId);
+    }
+
+    @Override
+    public Member findByIdForUpdate(String memberId) {
+        return target.findByIdForUpdate(memberId);
+    }
+
+    @Override
+    public Map<String, Member> findAllById(Collection<String> memberIds) {
+        return target.findAllById(memberIds);
+    }
+
+    @Override
+    public MemberPage findPage(String afterMemberId, int limit) {
+        return target.findPage(afterMemberId, limit);
+    }
+
+    @Override
+    public MemberPage findPageBefore(String beforeMemberId, int limit) {
+        return target.findPageBefore(beforeMemberId, limit);
+    }
+
+    @Override
+    public void update(String memberId, int money) {
+        target.update(memberId, money);
+    }
+
+    @Override
+    public Member findByIdWithVersion(String memberId) {
+        return target.findByIdWithVersion(memberId);
+    }
+
+    @Override
+    public void updateWithVersion(String memberId, int money, long version) {
+        target.updateWithVersion(memberId, money, version);
+    }
+
+    @Override
+    public boolean debit(String memberId, int amount) {
+        return target.debit(memberId, amount);
+    }
+
+    @Override
+    public boolean credit(String memberId, int amount) {
+        return target.credit(memberId, amount);
+    }
+
+    @Override
+    public int[] debitAll(List<Transfer> transfers) {
+        return target.debitAll(transfers);
+    }
+
+    @Override
+    public int[] creditAll(List<Transfer> transfers) {
+        return target.creditAll(transfers);
+    }
+
+    @Override
+    public void delete(String memberId) {
+        target.delete(memberId);
+    }
+}
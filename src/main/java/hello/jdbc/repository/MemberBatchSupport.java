@@ -0,0 +1,152 @@
+package hello.jdbc.repository;
+
+import hello.jdbc.domain.Member;
+
+import java.sql.BatchUpdateException;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * 배치 처리 공통 - 청크 나누기, 실패한 로우 찾기, IN 절 만들기
+ * MemberRepositoryV4_1, V4_2, V5 가 같이 쓴다.
+ */
+final class MemberBatchSupport {
+
+    //H2 키 중복 오류 코드
+    static final int DUPLICATE_KEY_ERROR_CODE = 23505;
+
+    //이미 있으면 select 가 0건이라 insert 도 0건이다. 키 중복 예외가 안 난다.
+    static final String TRY_SAVE_SQL = "insert into member(member_id, money) select ?, ? where not exists (select 1 from member where member_id = ?)";
+
+    //같은 member_id 로우가 있으면 update, 없으면 insert 한다.
+    //update 때 version 도 1 올린다. update() 와 같다. (merge ... key() 문법은 목록에 없는 컬럼을 못 바꾼다)
+    static final String UPSERT_SQL = "merge into member m using (values (?, ?)) s(member_id, money) on m.member_id = s.member_id"
+            + " when matched then update set m.money = s.money, m.version = m.version + 1"
+            + " when not matched then insert (member_id, money) values (s.member_id, s.money)";
+
+    private MemberBatchSupport() {
+    }
+
+    /**
+     * IN 절의 ? 개수는 이 크기들 중 하나로만 만든다.
+     * id 개수마다 SQL 이 달라지면 DB의 prepared statement 캐시가 계속 밀려난다.
+     * 모자란 자리는 마지막 id 를 반복해서 채운다. (IN 절이라 중복은 결과에 영향 없음)
+     */
+    private static final int[] IN_LIST_SHAPES = {1, 4, 16, 64, 256};
+    static final int MAX_IN_LIST_SIZE = IN_LIST_SHAPES[IN_LIST_SHAPES.length - 1];
+    private static final String[] IN_LIST_SQLS = new String[IN_LIST_SHAPES.length];
+
+    static {
+        for (int i = 0; i < IN_LIST_SHAPES.length; i++) {
+            String placeholders = String.join(",", Collections.nCopies(IN_LIST_SHAPES[i], "?"));
+            IN_LIST_SQLS[i] = "select * from member where member_id in (" + placeholders + ")";
+        }
+    }
+
+    static final int MAX_PAGE_SIZE = 1000;
+
+    /**
+     * 키셋 페이지 SQL. member_id(PK) 인덱스에서 키 다음 위치로 바로 찾아가서 limit 건만 읽는다.
+     * offset 처럼 앞 페이지를 읽고 버리지 않으니 몇번째 페이지든 비용이 같다.
+     * limit 은 한 건 더 읽어서 다음 페이지가 있는지 본다. (MemberPage.of)
+     */
+    static String pageSql(boolean hasKey, boolean descending) {
+        if (descending) {
+            return hasKey ? "select * from member where member_id < ? order by member_id desc limit ?"
+                    : "select * from member order by member_id desc limit ?";
+        }
+        return hasKey ? "select * from member where member_id > ? order by member_id limit ?"
+                : "select * from member order by member_id limit ?";
+    }
+
+    static void checkPageSize(int limit) {
+        if (limit <= 0 || limit > MAX_PAGE_SIZE) {
+            throw new IllegalArgumentException("limit 은 1 ~ " + MAX_PAGE_SIZE + " 이어야 한다. limit=" + limit);
+        }
+    }
+
+    static <T> List<List<T>> partition(Collection<T> items, int size) {
+        if (size <= 0) {
+            throw new IllegalArgumentException("batchSize 는 1 이상이어야 한다. batchSize=" + size);
+        }
+        List<List<T>> chunks = new ArrayList<>();
+        List<T> chunk = new ArrayList<>(Math.min(size, items.size()));
+        for (T item : items) {
+            chunk.add(item);
+            if (chunk.size() == size) {
+                chunks.add(chunk);
+                chunk = new ArrayList<>(size);
+            }
+        }
+        if (!chunk.isEmpty()) {
+            chunks.add(chunk);
+        }
+        return chunks;
+    }
+
+    /**
+     * executeBatch 가 실패했을 때 청크 안에서 실패한 memberId 를 찾는다.
+     * H2는 실패한 로우를 EXECUTE_FAILED 로 표시하고 나머지 로우는 계속 실행한다.
+     * 중간에 멈추는 드라이버는 updateCounts 가 짧게 오기 때문에 그 뒤는 실행 안된 것으로 본다.
+     */
+    static List<String> failedMemberIds(Throwable cause, List<Member> chunk) {
+        List<String> failed = new ArrayList<>();
+        int[] counts = cause instanceof BatchUpdateException ? ((BatchUpdateException) cause).getUpdateCounts() : null;
+        for (int i = 0; i < chunk.size(); i++) {
+            if (counts == null || i >= counts.length || counts[i] == Statement.EXECUTE_FAILED) {
+                failed.add(chunk.get(i).getMemberId());
+            }
+        }
+        return failed;
+    }
+
+    /**
+     * chunk 크기에 맞는 IN 절 SQL
+     */
+    static String inListSql(int size) {
+        return IN_LIST_SQLS[shapeIndex(size)];
+    }
+
+    /**
+     * inListSql 의 ? 개수에 맞춰서 바인딩할 파라미터. 남는 자리는 마지막 id 로 채운다.
+     */
+    static Object[] inListArgs(List<String> chunk) {
+        Object[] args = new Object[IN_LIST_SHAPES[shapeIndex(chunk.size())]];
+        for (int i = 0; i < args.length; i++) {
+            args[i] = chunk.get(Math.min(i, chunk.size() - 1));
+        }
+        return args;
+    }
+
+    private static int shapeIndex(int size) {
+        for (int i = 0; i < IN_LIST_SHAPES.length; i++) {
+            if (size <= IN_LIST_SHAPES[i]) {
+                return i;
+            }
+        }
+        throw new IllegalArgumentException("IN 절 최대 크기 초과 size=" + size);
+    }
+
+    static List<String> missingIds(Collection<String> requested, Map<String, Member> found) {
+        return requested.stream()
+                .filter(memberId -> !found.containsKey(memberId))
+                .distinct()
+                .collect(Collectors.toList());
+    }
+
+    static boolean isDuplicateKey(SQLException e) {
+        //BatchUpdateException 은 실제 원인을 nextException 에 담아두는 드라이버도 있다.
+        for (SQLException ex = e; ex != null; ex = ex.getNextException()) {
+            if (ex.getErrorCode() == DUPLICATE_KEY_ERROR_CODE) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -1,14 +1,133 @@
 package hello.jdbc.repository;
 
 import hello.jdbc.domain.Member;
+import hello.jdbc.domain.MemberPage;
+import hello.jdbc.domain.Transfer;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
 
 public interface MemberRepository {
+    int DEFAULT_BATCH_SIZE = 1000;
+
     Member save(Member member);
     // throws SQLException; // 이게 throws되어있어야 구현 클래스에서도 예외를 던질수 있다. 근데 이렇게 하면, 인터페이스가 JDBC기술에 종속적이게 된다.
 
+    /**
+     * JDBC 배치로 여러 회원을 저장한다. batchSize 건마다 한번씩 DB로 보낸다. (addBatch / executeBatch)
+     * 키 중복이 있으면 어떤 memberId가 실패했는지 예외 메시지에 담아서 던진다.
+     * 트랜잭션 밖에서 호출하면 앞에서 성공한 배치는 이미 커밋된 상태다.
+     */
+    List<Member> saveAll(Collection<Member> members, int batchSize);
+
+    default List<Member> saveAll(Collection<Member> members) {
+        return saveAll(members, DEFAULT_BATCH_SIZE);
+    }
+
+    /**
+     * 키 중복이면 예외 대신 DUPLICATE 를 돌려준다. (insert ... select ... where not exists)
+     * 이미 있는 회원이면 insert 가 0건이라 DB 도 예외를 만들지 않는다.
+     * 두 트랜잭션이 동시에 같은 id 를 넣을 때만 DB 가 키 중복을 내고, 그것도 DUPLICATE 로 바꿔서 돌려준다.
+     */
+    SaveResult trySave(Member member);
+
+    /**
+     * 있으면 money 를 바꾸고(version + 1) 없으면 넣는다. (merge into member using ...)
+     * 문장 하나라서 save 가 키 중복으로 실패한 뒤 update 하는 것보다 왕복이 절반이고 예외도 안 난다.
+     */
+    Member upsert(Member member);
+
+    /**
+     * upsert 를 JDBC 배치로 보낸다. batchSize 건마다 한번씩 DB로 보낸다.
+     * 재적재(import)처럼 이미 있는 회원이 섞여 있을 때 saveAll 대신 쓴다.
+     */
+    List<Member> upsertAll(Collection<Member> members, int batchSize);
+
+    default List<Member> upsertAll(Collection<Member> members) {
+        return upsertAll(members, DEFAULT_BATCH_SIZE);
+    }
+
     Member findById(String memberId);
 
+    /**
+     * 없으면 예외 대신 Optional.empty() 를 돌려준다. 없는 경우가 흔한 조회는 이쪽을 쓴다.
+     */
+    Optional<Member> findOptional(String memberId);
+
+    /**
+     * 회원이 있는지만 확인한다. 없어도 예외를 던지지 않는다. (select 1 ... )
+     */
+    boolean exists(String memberId);
+
+    /**
+     * select ... for update 로 조회한다. 조회한 로우에 쓰기 락이 걸리고 트랜잭션이 끝날 때까지 유지된다.
+     * 트랜잭션 안에서 호출해야 의미가 있다. 트랜잭션 밖(auto commit)이면 문장이 끝나자마자 락이 풀린다.
+     * 트랜잭션에 timeout 이 걸려있으면 락 대기도 그 시간 안에서만 한다.
+     */
+    Member findByIdForUpdate(String memberId);
+
+    /**
+     * 여러 회원을 IN 절로 한번에 조회한다. (memberId -> Member)
+     * 없는 회원은 예외 없이 결과에서 빠진다. 요청한 id 와 결과의 key 를 비교하면 된다.
+     */
+    Map<String, Member> findAllById(Collection<String> memberIds);
+
+    /**
+     * memberId 순서로 afterMemberId 다음부터 limit 건. (where member_id > ? order by member_id limit ?)
+     * 첫 페이지는 afterMemberId 에 null. 다음 페이지는 받은 페이지의 continuationToken 을 넘긴다.
+     * 페이지가 뒤로 가도 비용이 같다. 그 사이 추가/삭제된 회원이 있어도 건너뛰거나 두번 나오지 않는다.
+     */
+    MemberPage findPage(String afterMemberId, int limit);
+
+    /**
+     * findPage 의 역순. beforeMemberId 앞에서부터 memberId 내림차순으로 limit 건. 첫 페이지(맨 뒤)는 null.
+     */
+    MemberPage findPageBefore(String beforeMemberId, int limit);
+
+    /**
+     * money 를 바꾸는 문장(update, debit, credit, upsert 등)은 모두 version 을 1 올린다.
+     * 그래야 그 사이에 읽어둔 version 으로 updateWithVersion 하는 쪽이 충돌을 알아챈다.
+     */
     void update(String memberId, int money);
 
+    /**
+     * version 컬럼까지 조회한다. (낙관적 락용)
+     * version 컬럼이 있어야 한다. -> schema.sql
+     */
+    Member findByIdWithVersion(String memberId);
+
+    /**
+     * 읽을 때의 version 이 그대로일 때만 반영하고 version 을 1 올린다. (update ... where member_id = ? and version = ?)
+     * 그 사이 다른 트랜잭션이 먼저 바꿨거나 회원이 없으면 MyOptimisticLockException 을 던진다.
+     */
+    void updateWithVersion(String memberId, int money, long version);
+
+    /**
+     * 잔액을 읽지 않고 상대값으로 뺀다. (money = money - ?)
+     * 잔액이 amount 보다 적으면 반영되지 않는다.
+     * @return 반영되면 true, 회원이 없거나 잔액이 부족하면 false
+     */
+    boolean debit(String memberId, int amount);
+
+    /**
+     * 잔액을 읽지 않고 상대값으로 더한다. (money = money + ?)
+     * @return 반영되면 true, 회원이 없으면 false
+     */
+    boolean credit(String memberId, int amount);
+
+    /**
+     * 각 이체의 fromId 에서 출금을 JDBC 배치 한번으로 보낸다. (debit 과 같은 SQL)
+     * @return 이체 순서대로 반영된 로우 수. 1이면 반영, 0이면 회원이 없거나 잔액 부족
+     */
+    int[] debitAll(List<Transfer> transfers);
+
+    /**
+     * 각 이체의 toId 로 입금을 JDBC 배치 한번으로 보낸다. (credit 과 같은 SQL)
+     * @return 이체 순서대로 반영된 로우 수. 1이면 반영, 0이면 회원이 없음
+     */
+    int[] creditAll(List<Transfer> transfers);
+
     void delete(String memberId);
 }
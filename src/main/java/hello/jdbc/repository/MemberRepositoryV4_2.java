@@ -1,7 +1,10 @@
 package hello.jdbc.repository;
 
 import hello.jdbc.domain.Member;
+import hello.jdbc.domain.MemberPage;
+import hello.jdbc.domain.Transfer;
 import hello.jdbc.repository.ex.MyDbException;
+import hello.jdbc.repository.ex.MyOptimisticLockException;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.dao.DataAccessException;
@@ -12,7 +15,14 @@ import org.springframework.jdbc.support.SQLExceptionTranslator;
 
 import javax.sql.DataSource;
 import java.sql.*;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.NoSuchElementException;
+import java.util.Optional;
 
 /**
  * SQLExceptionTranslator 추가
@@ -59,6 +69,116 @@ public class MemberRepositoryV4_2 implements MemberRepository{
         }
     }
 
+    @Override
+    public List<Member> saveAll(Collection<Member> members, int batchSize) {
+        String sql = "insert into member(member_id,money) values(?,?)";
+
+        Connection con = null;
+        PreparedStatement pstmt = null;
+        List<Member> chunk = null;
+        try{
+            con = getConnection();
+            pstmt = con.prepareStatement(sql);      //PreparedStatement 하나를 재사용하고 파라미터만 바꿔서 addBatch 한다.
+            for (List<Member> c : MemberBatchSupport.partition(members, batchSize)) {
+                chunk = c;
+                for (Member member : chunk) {
+                    pstmt.setString(1, member.getMemberId());
+                    pstmt.setInt(2, member.getMoney());
+                    pstmt.addBatch();
+                }
+                pstmt.executeBatch();       //batchSize 건을 DB 왕복 한번에 보낸다.
+            }
+            return new ArrayList<>(members);
+        }catch (BatchUpdateException e){
+            //task 에 실패한 memberId 를 넣어주면 변환된 예외 메시지에 같이 찍힌다. 키 중복이면 DuplicateKeyException 이 된다.
+            List<String> failedIds = MemberBatchSupport.failedMemberIds(e, chunk);
+            DataAccessException ex = exTranslator.translate("saveAll failedMemberIds=" + failedIds, sql, e);
+            throw ex;
+        }catch (SQLException e){
+            DataAccessException ex = exTranslator.translate("saveAll", sql, e);
+            throw ex;
+        }finally{
+            close(con,pstmt,null);
+        }
+    }
+
+    @Override
+    public SaveResult trySave(Member member) {
+        String sql = MemberBatchSupport.TRY_SAVE_SQL;
+
+        Connection con = null;
+        PreparedStatement pstmt = null;
+        try{
+            con = getConnection();
+            pstmt = con.prepareStatement(sql);
+            pstmt.setString(1, member.getMemberId());
+            pstmt.setInt(2, member.getMoney());
+            pstmt.setString(3, member.getMemberId());
+            return pstmt.executeUpdate() == 1 ? SaveResult.SAVED : SaveResult.DUPLICATE;
+        }catch (SQLException e){
+            if (MemberBatchSupport.isDuplicateKey(e)) {
+                return SaveResult.DUPLICATE;        //동시에 같은 id 를 넣은 경우
+            }
+            DataAccessException ex = exTranslator.translate("trySave", sql, e);
+            throw ex;
+        }finally{
+            close(con,pstmt,null);
+        }
+    }
+
+    @Override
+    public Member upsert(Member member) {
+        String sql = MemberBatchSupport.UPSERT_SQL;
+
+        Connection con = null;
+        PreparedStatement pstmt = null;
+        try{
+            con = getConnection();
+            pstmt = con.prepareStatement(sql);
+            pstmt.setString(1, member.getMemberId());
+            pstmt.setInt(2, member.getMoney());
+            pstmt.executeUpdate();
+            return member;
+        }catch (SQLException e){
+            DataAccessException ex = exTranslator.translate("upsert", sql, e);
+            throw ex;
+        }finally{
+            close(con,pstmt,null);
+        }
+    }
+
+    @Override
+    public List<Member> upsertAll(Collection<Member> members, int batchSize) {
+        String sql = MemberBatchSupport.UPSERT_SQL;
+
+        Connection con = null;
+        PreparedStatement pstmt = null;
+        List<Member> chunk = null;
+        try{
+            con = getConnection();
+            pstmt = con.prepareStatement(sql);
+            for (List<Member> c : MemberBatchSupport.partition(members, batchSize)) {
+                chunk = c;
+                for (Member member : chunk) {
+                    pstmt.setString(1, member.getMemberId());
+                    pstmt.setInt(2, member.getMoney());
+                    pstmt.addBatch();
+                }
+                pstmt.executeBatch();
+            }
+            return new ArrayList<>(members);
+        }catch (BatchUpdateException e){
+            List<String> failedIds = MemberBatchSupport.failedMemberIds(e, chunk);
+            DataAccessException ex = exTranslator.translate("upsertAll failedMemberIds=" + failedIds, sql, e);
+            throw ex;
+        }catch (SQLException e){
+            DataAccessException ex = exTranslator.translate("upsertAll", sql, e);
+            throw ex;
+        }finally{
+            close(con,pstmt,null);
+        }
+    }
+
     @Override
     public Member findById(String memberId)  {
         String sql = "select * from member where member_id = ?";
@@ -90,9 +210,181 @@ public class MemberRepositoryV4_2 implements MemberRepository{
             close(con,pstmt,rs);
         }
     }
+
+    @Override
+    public Optional<Member> findOptional(String memberId) {
+        String sql = "select * from member where member_id = ?";
+
+        Connection con = null;
+        PreparedStatement pstmt = null;
+        ResultSet rs  =null;
+
+        try{
+            con = getConnection();
+            pstmt = con.prepareStatement(sql);
+            pstmt.setString(1,memberId);
+            rs = pstmt.executeQuery();
+            if(rs.next()){
+                Member member = new Member();
+                member.setMemberId(rs.getString("member_id"));
+                member.setMoney(rs.getInt("money"));
+                return Optional.of(member);
+            }
+            return Optional.empty();        //없는 건 예외가 아니다.
+        }catch(SQLException e){
+            DataAccessException ex = exTranslator.translate("findOptional", sql, e);
+            throw ex;
+        }finally{
+            close(con,pstmt,rs);
+        }
+    }
+
+    @Override
+    public boolean exists(String memberId) {
+        String sql = "select 1 from member where member_id = ?";
+
+        Connection con = null;
+        PreparedStatement pstmt = null;
+        ResultSet rs  =null;
+
+        try{
+            con = getConnection();
+            pstmt = con.prepareStatement(sql);
+            pstmt.setString(1,memberId);
+            rs = pstmt.executeQuery();
+            return rs.next();       //없어도 예외 없이 false
+        }catch(SQLException e){
+            DataAccessException ex = exTranslator.translate("exists", sql, e);
+            throw ex;
+        }finally{
+            close(con,pstmt,rs);
+        }
+    }
+
+    @Override
+    public Member findByIdForUpdate(String memberId) {
+        String sql = "select * from member where member_id = ? for update";
+
+        Connection con = null;
+        PreparedStatement pstmt = null;
+        ResultSet rs  =null;
+
+        try{
+            con = getConnection();
+            pstmt = con.prepareStatement(sql);
+            //트랜잭션 timeout 이 있으면 남은 시간을 쿼리 timeout 으로 건다. 락을 못잡고 기다리는 시간도 여기에 걸린다.
+            DataSourceUtils.applyTransactionTimeout(pstmt, dataSource);
+
+            pstmt.setString(1,memberId);
+            rs = pstmt.executeQuery();
+
+            if(rs.next()){
+                Member member = new Member();
+                member.setMemberId(rs.getString("member_id"));
+                member.setMoney(rs.getInt("money"));
+                return member;
+            }else{
+                throw new NoSuchElementException("member not found memberId=" + memberId);
+            }
+        }catch(SQLException e){
+            //락 대기 timeout 은 CannotAcquireLockException, 데드락은 DeadlockLoserDataAccessException 으로 변환된다.
+            DataAccessException ex = exTranslator.translate("findByIdForUpdate", sql, e);
+            throw ex;
+        }finally{
+            close(con,pstmt,rs);
+        }
+    }
+    @Override
+    public Map<String, Member> findAllById(Collection<String> memberIds) {
+        Map<String, Member> result = new HashMap<>();
+        if (memberIds.isEmpty()) {
+            return result;
+        }
+
+        String sql = null;
+        Connection con = null;
+        PreparedStatement pstmt = null;
+        ResultSet rs  =null;
+
+        try{
+            con = getConnection();      //청크가 여러개여도 커넥션은 한번만 획득한다.
+            for (List<String> chunk : MemberBatchSupport.partition(new LinkedHashSet<>(memberIds), MemberBatchSupport.MAX_IN_LIST_SIZE)) {
+                sql = MemberBatchSupport.inListSql(chunk.size());
+                pstmt = con.prepareStatement(sql);
+                Object[] args = MemberBatchSupport.inListArgs(chunk);
+                for (int i = 0; i < args.length; i++) {
+                    pstmt.setString(i + 1, (String) args[i]);
+                }
+                rs = pstmt.executeQuery();
+                while (rs.next()) {
+                    Member member = new Member();
+                    member.setMemberId(rs.getString("member_id"));
+                    member.setMoney(rs.getInt("money"));
+                    result.put(member.getMemberId(), member);
+                }
+                JdbcUtils.closeResultSet(rs);
+                JdbcUtils.closeStatement(pstmt);
+            }
+            //없는 회원은 예외를 던지지 않고 결과 Map 에서 빠진다.
+            log.info("findAllById requested={} found={}", memberIds.size(), result.size());
+            if (log.isDebugEnabled()) {
+                log.debug("findAllById missing={}", MemberBatchSupport.missingIds(memberIds, result));
+            }
+            return result;
+        }catch(SQLException e){
+            DataAccessException ex = exTranslator.translate("findAllById", sql, e);
+            throw ex;
+        }finally{
+            close(con,pstmt,rs);
+        }
+    }
+
+    @Override
+    public MemberPage findPage(String afterMemberId, int limit) {
+        return findPage(afterMemberId, limit, false);
+    }
+
+    @Override
+    public MemberPage findPageBefore(String beforeMemberId, int limit) {
+        return findPage(beforeMemberId, limit, true);
+    }
+
+    private MemberPage findPage(String key, int limit, boolean descending) {
+        MemberBatchSupport.checkPageSize(limit);
+        String sql = MemberBatchSupport.pageSql(key != null, descending);
+
+        Connection con = null;
+        PreparedStatement pstmt = null;
+        ResultSet rs  =null;
+
+        try{
+            con = getConnection();
+            pstmt = con.prepareStatement(sql);
+            int index = 1;
+            if (key != null) {
+                pstmt.setString(index++, key);
+            }
+            pstmt.setInt(index, limit + 1);     //한 건 더 읽어서 다음 페이지가 있는지 본다.
+            rs = pstmt.executeQuery();
+            List<Member> rows = new ArrayList<>(limit + 1);
+            while (rs.next()) {
+                Member member = new Member();
+                member.setMemberId(rs.getString("member_id"));
+                member.setMoney(rs.getInt("money"));
+                rows.add(member);
+            }
+            return MemberPage.of(rows, limit);
+        }catch(SQLException e){
+            DataAccessException ex = exTranslator.translate("findPage", sql, e);
+            throw ex;
+        }finally{
+            close(con,pstmt,rs);
+        }
+    }
+
     @Override
     public void update(String memberId, int money)  {
-        String sql = "update member set money=? where member_id=?";
+        String sql = "update member set money=?, version=version+1 where member_id=?";
 
         Connection con = null;
         PreparedStatement pstmt = null;
@@ -111,6 +403,161 @@ public class MemberRepositoryV4_2 implements MemberRepository{
             close(con,pstmt,null);
         }
     }
+
+    @Override
+    public Member findByIdWithVersion(String memberId) {
+        String sql = "select member_id, money, version from member where member_id = ?";
+
+        Connection con = null;
+        PreparedStatement pstmt = null;
+        ResultSet rs  =null;
+
+        try{
+            con = getConnection();
+            pstmt = con.prepareStatement(sql);
+            pstmt.setString(1,memberId);
+            rs = pstmt.executeQuery();
+
+            if(rs.next()){
+                Member member = new Member();
+                member.setMemberId(rs.getString("member_id"));
+                member.setMoney(rs.getInt("money"));
+                member.setVersion(rs.getLong("version"));
+                return member;
+            }else{
+                throw new NoSuchElementException("member not found memberId=" + memberId);
+            }
+        }catch(SQLException e){
+            DataAccessException ex = exTranslator.translate("findByIdWithVersion", sql, e);
+            throw ex;
+        }finally{
+            close(con,pstmt,rs);
+        }
+    }
+
+    @Override
+    public void updateWithVersion(String memberId, int money, long version) {
+        String sql = "update member set money=?, version=version+1 where member_id=? and version=?";
+
+        Connection con = null;
+        PreparedStatement pstmt = null;
+
+        try{
+            con = getConnection();
+            pstmt = con.prepareStatement(sql);
+            pstmt.setInt(1, money);
+            pstmt.setString(2, memberId);
+            pstmt.setLong(3, version);
+            int resultSize=pstmt.executeUpdate();
+            log.info("resultSize ={}", resultSize);
+            if (resultSize == 0) {
+                throw new MyOptimisticLockException("version 충돌 memberId=" + memberId + " version=" + version);
+            }
+        }catch (SQLException e){
+            DataAccessException ex = exTranslator.translate("updateWithVersion", sql, e);
+            throw ex;
+        }finally{
+            close(con,pstmt,null);
+        }
+    }
+
+    @Override
+    public boolean debit(String memberId, int amount) {
+        //잔액 확인과 차감을 한 문장으로 한다. 읽고 나서 쓰는 사이에 다른 트랜잭션이 끼어들 틈이 없다.
+        String sql = "update member set money = money - ?, version = version + 1 where member_id = ? and money >= ?";
+
+        Connection con = null;
+        PreparedStatement pstmt = null;
+
+        try{
+            con = getConnection();
+            pstmt = con.prepareStatement(sql);
+            pstmt.setInt(1, amount);
+            pstmt.setString(2, memberId);
+            pstmt.setInt(3, amount);
+            int resultSize=pstmt.executeUpdate();
+            log.info("resultSize ={}", resultSize);
+            return resultSize == 1;     //0이면 회원이 없거나 잔액 부족
+        }catch (SQLException e){
+            DataAccessException ex = exTranslator.translate("debit", sql, e);
+            throw ex;
+        }finally{
+            close(con,pstmt,null);
+        }
+    }
+
+    @Override
+    public boolean credit(String memberId, int amount) {
+        String sql = "update member set money = money + ?, version = version + 1 where member_id = ?";
+
+        Connection con = null;
+        PreparedStatement pstmt = null;
+
+        try{
+            con = getConnection();
+            pstmt = con.prepareStatement(sql);
+            pstmt.setInt(1, amount);
+            pstmt.setString(2, memberId);
+            int resultSize=pstmt.executeUpdate();
+            log.info("resultSize ={}", resultSize);
+            return resultSize == 1;
+        }catch (SQLException e){
+            DataAccessException ex = exTranslator.translate("credit", sql, e);
+            throw ex;
+        }finally{
+            close(con,pstmt,null);
+        }
+    }
+
+    @Override
+    public int[] debitAll(List<Transfer> transfers) {
+        String sql = "update member set money = money - ?, version = version + 1 where member_id = ? and money >= ?";
+
+        Connection con = null;
+        PreparedStatement pstmt = null;
+
+        try{
+            con = getConnection();
+            pstmt = con.prepareStatement(sql);
+            for (Transfer transfer : transfers) {
+                pstmt.setInt(1, transfer.getMoney());
+                pstmt.setString(2, transfer.getFromId());
+                pstmt.setInt(3, transfer.getMoney());
+                pstmt.addBatch();
+            }
+            return pstmt.executeBatch();        //조건에 안맞는 로우는 예외가 아니라 0 으로 돌아온다.
+        }catch (SQLException e){
+            DataAccessException ex = exTranslator.translate("debitAll", sql, e);
+            throw ex;
+        }finally{
+            close(con,pstmt,null);
+        }
+    }
+
+    @Override
+    public int[] creditAll(List<Transfer> transfers) {
+        String sql = "update member set money = money + ?, version = version + 1 where member_id = ?";
+
+        Connection con = null;
+        PreparedStatement pstmt = null;
+
+        try{
+            con = getConnection();
+            pstmt = con.prepareStatement(sql);
+            for (Transfer transfer : transfers) {
+                pstmt.setInt(1, transfer.getMoney());
+                pstmt.setString(2, transfer.getToId());
+                pstmt.addBatch();
+            }
+            return pstmt.executeBatch();
+        }catch (SQLException e){
+            DataAccessException ex = exTranslator.translate("creditAll", sql, e);
+            throw ex;
+        }finally{
+            close(con,pstmt,null);
+        }
+    }
+
     @Override
     public void delete(String memberId)   {
         String sql = "delete from member where member_id=?";
@@ -1,17 +1,38 @@
 package hello.jdbc.repository;
 
 import hello.jdbc.domain.Member;
+import hello.jdbc.domain.MemberPage;
+import hello.jdbc.domain.Transfer;
+import hello.jdbc.repository.ex.MyOptimisticLockException;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.ResultSetExtractor;
+import org.springframework.jdbc.core.RowCallbackHandler;
 import org.springframework.jdbc.core.RowMapper;
 import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 /**
  * JDBC Template 사용 !
  */
 @Slf4j
 public class MemberRepositoryV5 implements MemberRepository{
 
+    public static final int DEFAULT_FETCH_SIZE = 500;
 
     private final JdbcTemplate template;
 
@@ -48,6 +69,51 @@ public class MemberRepositoryV5 implements MemberRepository{
         }*/
     }
 
+    @Override
+    public List<Member> saveAll(Collection<Member> members, int batchSize) {
+        String sql = "insert into member(member_id,money) values(?,?)";
+        //청크는 직접 나눈다. 그래야 실패했을 때 어떤 회원이 실패했는지 알 수 있다.
+        for (List<Member> chunk : MemberBatchSupport.partition(members, batchSize)) {
+            try {
+                template.batchUpdate(sql, chunk, chunk.size(), (ps, member) -> {
+                    ps.setString(1, member.getMemberId());
+                    ps.setInt(2, member.getMoney());
+                });
+            } catch (DuplicateKeyException e) {
+                //JdbcTemplate 이 이미 스프링 예외로 변환해 준다. 원인(BatchUpdateException)에서 실패한 로우를 찾아서 메시지에 담는다.
+                throw new DuplicateKeyException("키 중복 memberIds=" + MemberBatchSupport.failedMemberIds(e.getCause(), chunk), e);
+            }
+        }
+        return new ArrayList<>(members);
+    }
+
+    @Override
+    public SaveResult trySave(Member member) {
+        try {
+            int rows = template.update(MemberBatchSupport.TRY_SAVE_SQL, member.getMemberId(), member.getMoney(), member.getMemberId());
+            return rows == 1 ? SaveResult.SAVED : SaveResult.DUPLICATE;
+        } catch (DuplicateKeyException e) {
+            return SaveResult.DUPLICATE;        //동시에 같은 id 를 넣은 경우
+        }
+    }
+
+    @Override
+    public Member upsert(Member member) {
+        template.update(MemberBatchSupport.UPSERT_SQL, member.getMemberId(), member.getMoney());
+        return member;
+    }
+
+    @Override
+    public List<Member> upsertAll(Collection<Member> members, int batchSize) {
+        for (List<Member> chunk : MemberBatchSupport.partition(members, batchSize)) {
+            template.batchUpdate(MemberBatchSupport.UPSERT_SQL, chunk, chunk.size(), (ps, member) -> {
+                ps.setString(1, member.getMemberId());
+                ps.setInt(2, member.getMoney());
+            });
+        }
+        return new ArrayList<>(members);
+    }
+
     @Override
     public Member findById(String memberId)  {
         String sql = "select * from member where member_id = ?";
@@ -56,6 +122,77 @@ public class MemberRepositoryV5 implements MemberRepository{
         return member;
 
     }
+
+    @Override
+    public Optional<Member> findOptional(String memberId) {
+        String sql = "select * from member where member_id = ?";
+        //queryForObject 와 달리 query 는 없으면 빈 리스트다. EmptyResultDataAccessException 을 만들지 않는다.
+        return template.query(sql, memberRowMapper(), memberId).stream().findFirst();
+    }
+
+    @Override
+    public boolean exists(String memberId) {
+        String sql = "select 1 from member where member_id = ?";
+        //queryForObject 는 없으면 EmptyResultDataAccessException 을 던진다. 있는지만 보면 되니 rs.next() 결과를 그대로 쓴다.
+        return Boolean.TRUE.equals(template.query(sql, (ResultSetExtractor<Boolean>) ResultSet::next, memberId));
+    }
+
+    @Override
+    public Member findByIdForUpdate(String memberId) {
+        String sql = "select * from member where member_id = ? for update";
+        //JdbcTemplate 은 트랜잭션 timeout 을 쿼리 timeout 으로 알아서 걸어준다.
+        return template.queryForObject(sql, memberRowMapper(), memberId);
+    }
+
+    @Override
+    public Map<String, Member> findAllById(Collection<String> memberIds) {
+        Map<String, Member> result = new HashMap<>();
+        for (List<String> chunk : MemberBatchSupport.partition(new LinkedHashSet<>(memberIds), MemberBatchSupport.MAX_IN_LIST_SIZE)) {
+            String sql = MemberBatchSupport.inListSql(chunk.size());
+            for (Member member : template.query(sql, memberRowMapper(), MemberBatchSupport.inListArgs(chunk))) {
+                result.put(member.getMemberId(), member);
+            }
+        }
+        //없는 회원은 예외를 던지지 않고 결과 Map 에서 빠진다.
+        log.info("findAllById requested={} found={}", memberIds.size(), result.size());
+        if (log.isDebugEnabled()) {
+            log.debug("findAllById missing={}", MemberBatchSupport.missingIds(memberIds, result));
+        }
+        return result;
+    }
+
+    /**
+     * member 테이블 전체를 스트림으로 조회한다. (야간 정산처럼 전체를 한번 훑을 때)
+     * 결과를 List 로 다 올리지 않고 forward-only ResultSet 으로 fetchSize 만큼씩 가져온다.
+     * 커넥션은 스트림이 열려있는 동안만 잡고 있다. 반드시 close 해야 반환된다. -> try-with-resources 로 쓰자.
+     */
+    public Stream<Member> streamAll(int fetchSize) {
+        String sql = "select * from member order by member_id";
+        return template.queryForStream(con -> forwardOnly(con, sql, fetchSize), memberRowMapper());
+        //queryForStream 도 내부에서 DataSourceUtils 로 커넥션을 얻기 때문에 트랜잭션 안에서 부르면 그 커넥션을 쓴다.
+    }
+
+    public Stream<Member> streamAll() {
+        return streamAll(DEFAULT_FETCH_SIZE);
+    }
+
+    /**
+     * 콜백 방식. 메서드가 끝나면 커넥션은 JdbcTemplate 이 알아서 반환한다.
+     */
+    public void streamAll(int fetchSize, Consumer<Member> consumer) {
+        String sql = "select * from member order by member_id";
+        RowMapper<Member> rowMapper = memberRowMapper();
+        int[] rowNum = {0};
+        template.query(con -> forwardOnly(con, sql, fetchSize),
+                (RowCallbackHandler) rs -> consumer.accept(rowMapper.mapRow(rs, rowNum[0]++)));
+    }
+
+    private static PreparedStatement forwardOnly(Connection con, String sql, int fetchSize) throws SQLException {
+        PreparedStatement pstmt = con.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+        pstmt.setFetchSize(fetchSize);      //한번 왕복에 가져올 로우 수. 메모리에는 이만큼만 올라온다.
+        return pstmt;
+    }
+
     //조회 부분은 RowMapper가 필요하다.
     private RowMapper<Member> memberRowMapper() {
         //rs 는 resultSet (반환은 ResultSet 이다. select 쿼리의 결과를 담고 있는 통.) Member클래스는 인스턴스 필드가 2개.
@@ -68,12 +205,104 @@ public class MemberRepositoryV5 implements MemberRepository{
         };
     }
 
+    @Override
+    public MemberPage findPage(String afterMemberId, int limit) {
+        return findPage(afterMemberId, limit, false);
+    }
+
+    @Override
+    public MemberPage findPageBefore(String beforeMemberId, int limit) {
+        return findPage(beforeMemberId, limit, true);
+    }
+
+    private MemberPage findPage(String key, int limit, boolean descending) {
+        MemberBatchSupport.checkPageSize(limit);
+        String sql = MemberBatchSupport.pageSql(key != null, descending);
+        Object[] args = key != null ? new Object[]{key, limit + 1} : new Object[]{limit + 1};
+        return MemberPage.of(template.query(sql, memberRowMapper(), args), limit);
+    }
+
     @Override
     public void update(String memberId, int money)  {
-        String sql = "update member set money=? where member_id=?";
+        String sql = "update member set money=?, version=version+1 where member_id=?";
 
         template.update(sql, money, memberId);
     }
+
+    @Override
+    public Member findByIdWithVersion(String memberId) {
+        String sql = "select member_id, money, version from member where member_id = ?";
+        return template.queryForObject(sql, (rs, rowNum) -> {
+            Member member = new Member();
+            member.setMemberId(rs.getString("member_id"));
+            member.setMoney(rs.getInt("money"));
+            member.setVersion(rs.getLong("version"));
+            return member;
+        }, memberId);
+    }
+
+    @Override
+    public void updateWithVersion(String memberId, int money, long version) {
+        String sql = "update member set money=?, version=version+1 where member_id=? and version=?";
+
+        if (template.update(sql, money, memberId, version) == 0) {
+            throw new MyOptimisticLockException("version 충돌 memberId=" + memberId + " version=" + version);
+        }
+    }
+    @Override
+    public boolean debit(String memberId, int amount) {
+        //잔액 확인과 차감을 한 문장으로 한다. 읽고 나서 쓰는 사이에 다른 트랜잭션이 끼어들 틈이 없다.
+        String sql = "update member set money = money - ?, version = version + 1 where member_id = ? and money >= ?";
+
+        return template.update(sql, amount, memberId, amount) == 1;      //0이면 회원이 없거나 잔액 부족
+    }
+
+    @Override
+    public boolean credit(String memberId, int amount) {
+        String sql = "update member set money = money + ?, version = version + 1 where member_id = ?";
+
+        return template.update(sql, amount, memberId) == 1;
+    }
+
+    @Override
+    public int[] debitAll(List<Transfer> transfers) {
+        String sql = "update member set money = money - ?, version = version + 1 where member_id = ? and money >= ?";
+
+        return template.batchUpdate(sql, new BatchPreparedStatementSetter() {
+            @Override
+            public void setValues(PreparedStatement ps, int i) throws SQLException {
+                Transfer transfer = transfers.get(i);
+                ps.setInt(1, transfer.getMoney());
+                ps.setString(2, transfer.getFromId());
+                ps.setInt(3, transfer.getMoney());
+            }
+
+            @Override
+            public int getBatchSize() {
+                return transfers.size();
+            }
+        });
+    }
+
+    @Override
+    public int[] creditAll(List<Transfer> transfers) {
+        String sql = "update member set money = money + ?, version = version + 1 where member_id = ?";
+
+        return template.batchUpdate(sql, new BatchPreparedStatementSetter() {
+            @Override
+            public void setValues(PreparedStatement ps, int i) throws SQLException {
+                Transfer transfer = transfers.get(i);
+                ps.setInt(1, transfer.getMoney());
+                ps.setString(2, transfer.getToId());
+            }
+
+            @Override
+            public int getBatchSize() {
+                return transfers.size();
+            }
+        });
+    }
+
     @Override
     public void delete(String memberId)   {
         String sql = "delete from member where member_id=?";
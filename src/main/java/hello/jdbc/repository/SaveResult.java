@@ -0,0 +1,13 @@
+package hello.jdbc.repository;
+
+/**
+ * trySave 결과. 키 중복을 예외 대신 값으로 돌려준다.
+ */
+public enum SaveResult {
+    SAVED,
+    DUPLICATE;
+
+    public boolean isSaved() {
+        return this == SAVED;
+    }
+}
@@ -0,0 +1,218 @@
+package hello.jdbc.repository.cache;
+
+import hello.jdbc.domain.Member;
+import hello.jdbc.domain.Transfer;
+import hello.jdbc.repository.DelegatingMemberRepository;
+import hello.jdbc.repository.MemberRepository;
+import hello.jdbc.repository.SaveResult;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * 읽기 캐시 데코레이터. findById / findAllById 는 캐시를 먼저 보고, 없으면 target 에서 읽어서 캐시에 넣는다. (read-through)
+ * 쓰기는 target 에 그대로 보내고 해당 회원을 캐시에서 지운다.
+ *
+ * 어떤 구현체에든 씌울 수 있다.
+ *   @Bean
+ *   MemberRepository memberRepository() {
+ *       return new CachingMemberRepository(new MemberRepositoryV5(dataSource), new MemberCache(10_000, Duration.ofMinutes(1)));
+ *   }
+ *
+ * findByIdForUpdate / findByIdWithVersion 은 락이나 최신 version 이 필요해서 캐시를 쓰지 않는다.
+ * 트랜잭션 안에서 쓰면 커밋 전 값이 다른 스레드에 보일 수 있다. 이때는 TransactionAwareCachingMemberRepository 를 쓴다.
+ */
+@Slf4j
+public class CachingMemberRepository extends DelegatingMemberRepository {
+
+    protected final MemberCache cache;
+
+    public CachingMemberRepository(MemberRepository target, MemberCache cache) {
+        super(target);
+        this.cache = cache;
+    }
+
+    @Override
+    public Member findById(String memberId) {
+        Member cached = cache.get(memberId);
+        if (cached != null) {
+            return cached;
+        }
+        long stamp = cache.stamp();
+        Member member = super.findById(memberId);       //없으면 target 이 던진 예외가 그대로 나간다.
+        cache.put(member, stamp);
+        return member;
+    }
+
+    @Override
+    public Optional<Member> findOptional(String memberId) {
+        Member cached = cache.get(memberId);
+        if (cached != null) {
+            return Optional.of(cached);
+        }
+        long stamp = cache.stamp();
+        Optional<Member> member = super.findOptional(memberId);
+        member.ifPresent(m -> cache.put(m, stamp));
+        return member;
+    }
+
+    @Override
+    public Map<String, Member> findAllById(Collection<String> memberIds) {
+        Map<String, Member> result = new HashMap<>();
+        List<String> missing = new ArrayList<>();
+        for (String memberId : new LinkedHashSet<>(memberIds)) {
+            Member cached = cache.get(memberId);
+            if (cached != null) {
+                result.put(memberId, cached);
+            } else {
+                missing.add(memberId);
+            }
+        }
+        if (missing.isEmpty()) {
+            return result;
+        }
+
+        //캐시에 없는 것만 한번에 읽는다.
+        long stamp = cache.stamp();
+        Map<String, Member> loaded = super.findAllById(missing);
+        for (Member member : loaded.values()) {
+            cache.put(member, stamp);
+        }
+        result.putAll(loaded);
+        return result;
+    }
+
+    @Override
+    public Member save(Member member) {
+        try {
+            return super.save(member);
+        } finally {
+            evict(member.getMemberId());
+        }
+    }
+
+    @Override
+    public List<Member> saveAll(Collection<Member> members, int batchSize) {
+        try {
+            return super.saveAll(members, batchSize);
+        } finally {
+            for (Member member : members) {
+                evict(member.getMemberId());
+            }
+        }
+    }
+
+    @Override
+    public SaveResult trySave(Member member) {
+        try {
+            return super.trySave(member);
+        } finally {
+            evict(member.getMemberId());
+        }
+    }
+
+    @Override
+    public Member upsert(Member member) {
+        try {
+            return super.upsert(member);
+        } finally {
+            evict(member.getMemberId());
+        }
+    }
+
+    @Override
+    public List<Member> upsertAll(Collection<Member> members, int batchSize) {
+        try {
+            return super.upsertAll(members, batchSize);
+        } finally {
+            for (Member member : members) {
+                evict(member.getMemberId());
+            }
+        }
+    }
+
+    @Override
+    public void update(String memberId, int money) {
+        try {
+            super.update(memberId, money);
+        } finally {
+            evict(memberId);
+        }
+    }
+
+    @Override
+    public void updateWithVersion(String memberId, int money, long version) {
+        try {
+            super.updateWithVersion(memberId, money, version);
+        } finally {
+            evict(memberId);
+        }
+    }
+
+    @Override
+    public boolean debit(String memberId, int amount) {
+        try {
+            return super.debit(memberId, amount);
+        } finally {
+            evict(memberId);
+        }
+    }
+
+    @Override
+    public boolean credit(String memberId, int amount) {
+        try {
+            return super.credit(memberId, amount);
+        } finally {
+            evict(memberId);
+        }
+    }
+
+    @Override
+    public int[] debitAll(List<Transfer> transfers) {
+        try {
+            return super.debitAll(transfers);
+        } finally {
+            for (Transfer transfer : transfers) {
+                evict(transfer.getFromId());
+            }
+        }
+    }
+
+    @Override
+    public int[] creditAll(List<Transfer> transfers) {
+        try {
+            return super.creditAll(transfers);
+        } finally {
+            for (Transfer transfer : transfers) {
+                evict(transfer.getToId());
+            }
+        }
+    }
+
+    @Override
+    public void delete(String memberId) {
+        try {
+            super.delete(memberId);
+        } finally {
+            evict(memberId);
+        }
+    }
+
+    /**
+     * 쓰기 후에 캐시를 지운다. 예외가 나도 지운다. (일부만 반영됐을 수 있으니)
+     * 하위 클래스가 지우는 시점을 바꿀 수 있다.
+     */
+    protected void evict(String memberId) {
+        cache.invalidate(memberId);
+    }
+
+    public MemberCache getCache() {
+        return cache;
+    }
+}
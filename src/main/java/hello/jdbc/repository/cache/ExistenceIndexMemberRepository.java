@@ -0,0 +1,353 @@
+package hello.jdbc.repository.cache;
+
+import hello.jdbc.domain.Member;
+import hello.jdbc.repository.DelegatingMemberRepository;
+import hello.jdbc.repository.MemberRepository;
+import hello.jdbc.repository.MemberRepositoryV5;
+import hello.jdbc.repository.SaveResult;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * exists(memberId) 를 메모리에서 먼저 거르는 데코레이터. 없는 회원 조회(가입 전 중복 확인 등)가 많을 때 쓴다.
+ *
+ * - Bloom filter : 있는 회원 id 를 전부 넣어둔다. 필터에 없으면 DB 에 물어보지 않고 바로 false.
+ * - 음성 캐시 : 필터는 통과했는데 DB 에 없던 id (오탐) 를 negativeTtl 동안 기억한다.
+ *
+ * 필터는 rebuild 로 채운다. 시작할 때 한번 스트리밍으로 전체 id 를 읽어서 넣는다.
+ * load 로 만들면 만들면서 바로 채운다. 생성자로 만들었으면 직접 rebuild 를 불러야 하고, 그 전에는 exists 가 전부 DB 로 간다.
+ *   @Bean
+ *   MemberRepository memberRepository(DataSource dataSource) {
+ *       return ExistenceIndexMemberRepository.load(new MemberRepositoryV5(dataSource), 1_000_000, 0.01, Duration.ofSeconds(30), 10_000);
+ *   }
+ *
+ * save, trySave, upsert 는 DB 에 넣기 전에 필터에 먼저 넣는다. (필터에 남는 쪽은 오탐일 뿐이라 안전하다)
+ * rebuild 중에는 지금 필터와 만드는 중인 필터 둘 다에 넣는다. 새 필터에서 빠지는 회원(미탐)이 없어야 한다.
+ * - 만드는 중인 필터를 먼저 걸어두고 나서 스캔을 연다. (그래서 스트림 대신 Supplier 를 받는다)
+ * - 걸기 전에 필터에 넣었지만 아직 커밋 안 된 쓰기(inFlight)는 스캔에 안 보일 수 있으니 새 필터에 직접 넣는다.
+ * - 필터 교체와 save 의 필터 쓰기는 swapLock 으로 엇갈리지 않게 한다.
+ *
+ * 음성 캐시는 쓰기 전과 쓰기가 끝난 뒤(트랜잭션이면 끝날 때) 두번 지운다.
+ * 그래도 쓰기 전에 DB 에서 '없음' 을 읽은 조회가 늦게 기억하면 남는다. 그래서 회원 id 구간별 쓰기 번호(writeStamps)를 두고,
+ * 조회 시작 때와 기억한 뒤의 번호가 다르면 기억한 것을 다시 지운다.
+ * delete 는 필터에서 지울 수 없다. 지운 id 는 오탐이 되고, 트랜잭션 밖에서 지웠으면 음성 캐시에 넣는다.
+ * 다른 서버가 넣은 회원은 이 필터에 없으니, 여러 서버에서 쓰면 주기적으로 rebuild 해야 한다.
+ * 틀려도 "있는데 없다" 쪽이라 save 는 DB 의 PK 제약에서 걸린다. exists 를 유일성 보장으로 쓰면 안 된다.
+ */
+@Slf4j
+public class ExistenceIndexMemberRepository extends DelegatingMemberRepository {
+
+    private final long expectedInsertions;
+    private final double fpp;
+    private final long negativeTtlNanos;
+    private final int negativeMaximumSize;
+
+    private static final int STAMP_STRIPES = 256;
+
+    private volatile MemberBloomFilter filter;      //rebuild 전에는 null
+    private volatile MemberBloomFilter building;    //rebuild 중에 들어온 save 도 새 필터에 넣는다.
+    private final ReadWriteLock swapLock = new ReentrantReadWriteLock();     //필터 쓰기는 read, building 걸기/필터 교체는 write
+    private final Map<String, Integer> inFlight = new ConcurrentHashMap<>();  //필터에 넣고 아직 안 끝난 쓰기 수
+    private final Map<String, Long> absent = new ConcurrentHashMap<>();   //memberId -> 만료 시각(nanoTime)
+    private final AtomicLongArray writeStamps = new AtomicLongArray(STAMP_STRIPES);
+
+    private final LongAdder filterRejects = new LongAdder();
+    private final LongAdder negativeHits = new LongAdder();
+    private final LongAdder lookups = new LongAdder();
+    private final LongAdder falsePositives = new LongAdder();
+
+    public ExistenceIndexMemberRepository(MemberRepository target, long expectedInsertions, double fpp,
+                                          Duration negativeTtl, int negativeMaximumSize) {
+        super(target);
+        this.expectedInsertions = expectedInsertions;
+        this.fpp = fpp;
+        this.negativeTtlNanos = negativeTtl.toNanos();
+        this.negativeMaximumSize = negativeMaximumSize;
+    }
+
+    /**
+     * 만들고 target 의 전체 회원 id 를 스트리밍으로 읽어서 필터를 채운 다음 돌려준다.
+     * 돌려받은 순간부터 없는 회원 조회는 DB 까지 안 간다.
+     */
+    public static ExistenceIndexMemberRepository load(MemberRepositoryV5 target, long expectedInsertions, double fpp,
+                                                      Duration negativeTtl, int negativeMaximumSize) {
+        ExistenceIndexMemberRepository repository =
+                new ExistenceIndexMemberRepository(target, expectedInsertions, fpp, negativeTtl, negativeMaximumSize);
+        repository.rebuild(() -> target.streamAll().map(Member::getMemberId));
+        return repository;
+    }
+
+    /**
+     * 필터를 새로 만들어서 바꾼다. 지워진 회원이 쌓여서 오탐이 늘었을 때도 다시 부른다.
+     * @param memberIds 전체 id 스캔. 만드는 중인 필터를 건 다음에 연다. 다 읽으면 닫는다.
+     */
+    public synchronized void rebuild(Supplier<Stream<String>> memberIds) {
+        MemberBloomFilter next = new MemberBloomFilter(expectedInsertions, fpp);
+        swapLock.writeLock().lock();
+        try {
+            building = next;
+            inFlight.keySet().forEach(next::put);
+        } finally {
+            swapLock.writeLock().unlock();
+        }
+
+        long count;
+        try (Stream<String> ids = memberIds.get()) {
+            count = ids.peek(next::put).count();
+        } catch (RuntimeException e) {
+            swap(filter);       //실패하면 지금 필터를 그대로 쓴다.
+            throw e;
+        }
+        swap(next);
+        absent.clear();
+        log.info("회원 존재 필터 rebuild members={} bits={} hashes={} expectedFpp={}",
+                count, next.getBitSize(), next.getHashCount(), String.format("%.4f", next.expectedFpp()));
+    }
+
+    private void swap(MemberBloomFilter next) {
+        swapLock.writeLock().lock();
+        try {
+            filter = next;
+            building = null;
+        } finally {
+            swapLock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public boolean exists(String memberId) {
+        long stamp = writeStamps.get(stripe(memberId));
+        MemberBloomFilter current = filter;
+        if (current != null && !current.mightContain(memberId)) {
+            filterRejects.increment();
+            return false;
+        }
+        Long expiresAt = absent.get(memberId);
+        if (expiresAt != null) {
+            if (expiresAt - System.nanoTime() > 0) {
+                negativeHits.increment();
+                return false;
+            }
+            absent.remove(memberId, expiresAt);
+        }
+
+        lookups.increment();
+        boolean exists = super.exists(memberId);
+        if (!exists) {
+            if (current != null) {
+                falsePositives.increment();
+            }
+            //트랜잭션 안에서 본 '없음' 은 커밋 전 상태일 수 있어서 기억하지 않는다.
+            if (!TransactionSynchronizationManager.isActualTransactionActive()) {
+                remember(memberId, stamp);
+            }
+        }
+        return exists;
+    }
+
+    @Override
+    public Member save(Member member) {
+        List<String> memberIds = List.of(member.getMemberId());
+        beforeWrite(memberIds);
+        try {
+            return super.save(member);
+        } finally {
+            afterWrite(memberIds);
+        }
+    }
+
+    @Override
+    public List<Member> saveAll(Collection<Member> members, int batchSize) {
+        List<String> memberIds = memberIds(members);
+        beforeWrite(memberIds);
+        try {
+            return super.saveAll(members, batchSize);
+        } finally {
+            afterWrite(memberIds);
+        }
+    }
+
+    @Override
+    public SaveResult trySave(Member member) {
+        List<String> memberIds = List.of(member.getMemberId());
+        beforeWrite(memberIds);
+        try {
+            return super.trySave(member);
+        } finally {
+            afterWrite(memberIds);
+        }
+    }
+
+    @Override
+    public Member upsert(Member member) {
+        List<String> memberIds = List.of(member.getMemberId());
+        beforeWrite(memberIds);
+        try {
+            return super.upsert(member);
+        } finally {
+            afterWrite(memberIds);
+        }
+    }
+
+    @Override
+    public List<Member> upsertAll(Collection<Member> members, int batchSize) {
+        List<String> memberIds = memberIds(members);
+        beforeWrite(memberIds);
+        try {
+            return super.upsertAll(members, batchSize);
+        } finally {
+            afterWrite(memberIds);
+        }
+    }
+
+    @Override
+    public void delete(String memberId) {
+        long stamp = writeStamps.get(stripe(memberId));
+        super.delete(memberId);
+        if (!TransactionSynchronizationManager.isActualTransactionActive()) {
+            remember(memberId, stamp);
+        }
+    }
+
+    private static List<String> memberIds(Collection<Member> members) {
+        return members.stream().map(Member::getMemberId).collect(Collectors.toList());
+    }
+
+    /**
+     * DB 에 쓰기 전에 필터(rebuild 중이면 두 필터 모두)에 넣고 음성 캐시를 지운다.
+     */
+    private void beforeWrite(Collection<String> memberIds) {
+        swapLock.readLock().lock();
+        try {
+            MemberBloomFilter current = filter;
+            MemberBloomFilter next = building;
+            for (String memberId : memberIds) {
+                inFlight.merge(memberId, 1, Integer::sum);
+                if (current != null) {
+                    current.put(memberId);
+                }
+                if (next != null) {
+                    next.put(memberId);
+                }
+            }
+        } finally {
+            swapLock.readLock().unlock();
+        }
+        for (String memberId : memberIds) {
+            invalidate(memberId);
+        }
+    }
+
+    /**
+     * 쓰기가 끝나면(트랜잭션 안이면 트랜잭션이 끝나면) 음성 캐시를 한번 더 지운다.
+     * 커밋 전에 다른 스레드가 '없음' 을 읽어서 기억했을 수 있다.
+     */
+    private void afterWrite(Collection<String> memberIds) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    completeWrite(memberIds);
+                }
+            });
+        } else {
+            completeWrite(memberIds);
+        }
+    }
+
+    private void completeWrite(Collection<String> memberIds) {
+        for (String memberId : memberIds) {
+            inFlight.computeIfPresent(memberId, (id, count) -> count == 1 ? null : count - 1);
+            invalidate(memberId);
+        }
+    }
+
+    private void invalidate(String memberId) {
+        writeStamps.incrementAndGet(stripe(memberId));
+        absent.remove(memberId);
+    }
+
+    private static int stripe(String memberId) {
+        return (memberId.hashCode() & 0x7fffffff) % STAMP_STRIPES;
+    }
+
+    /**
+     * '없음' 을 기억한다. 조회를 시작한 뒤(stamp) 이 구간에 쓰기가 있었으면 도로 지운다.
+     * 먼저 넣고 나서 확인해야 쓰기 쪽의 invalidate 와 어느 순서로 엇갈려도 남지 않는다.
+     */
+    private void remember(String memberId, long stamp) {
+        remember(memberId);
+        if (writeStamps.get(stripe(memberId)) != stamp) {
+            absent.remove(memberId);
+        }
+    }
+
+    private void remember(String memberId) {
+        if (absent.size() >= negativeMaximumSize) {
+            purgeExpired();
+            if (absent.size() >= negativeMaximumSize) {
+                absent.clear();     //그래도 가득이면 비운다. 음성 캐시는 없어도 DB 에 한번 더 물어볼 뿐이다.
+            }
+        }
+        absent.put(memberId, System.nanoTime() + negativeTtlNanos);
+    }
+
+    private void purgeExpired() {
+        long now = System.nanoTime();
+        for (Iterator<Long> it = absent.values().iterator(); it.hasNext(); ) {
+            if (it.next() - now <= 0) {
+                it.remove();
+            }
+        }
+    }
+
+    public boolean isLoaded() {
+        return filter != null;
+    }
+
+    /** 필터에서 바로 false 로 끝난 수 */
+    public long getFilterRejectCount() {
+        return filterRejects.sum();
+    }
+
+    /** 음성 캐시에서 false 로 끝난 수 */
+    public long getNegativeHitCount() {
+        return negativeHits.sum();
+    }
+
+    /** DB 까지 간 수 */
+    public long getLookupCount() {
+        return lookups.sum();
+    }
+
+    /** 필터는 통과했는데 DB 에 없던 수 */
+    public long getFalsePositiveCount() {
+        return falsePositives.sum();
+    }
+
+    @Override
+    public String toString() {
+        MemberBloomFilter current = filter;
+        return "ExistenceIndex{filterRejects=" + getFilterRejectCount()
+                + ", negativeHits=" + getNegativeHitCount()
+                + ", lookups=" + getLookupCount()
+                + ", falsePositives=" + getFalsePositiveCount()
+                + ", expectedFpp=" + (current == null ? "-" : String.format("%.4f", current.expectedFpp()))
+                + '}';
+    }
+}
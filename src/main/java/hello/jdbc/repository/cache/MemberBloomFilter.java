@@ -0,0 +1,99 @@
+package hello.jdbc.repository.cache;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * memberId 용 Bloom filter.
+ * mightContain 이 false 면 확실히 없다. true 면 있을 수도 있다. (오탐률 약 fpp)
+ *
+ * 비트는 AtomicLongArray 에 둔다. put 은 CAS 로 비트를 켜기만 하고 끄지는 않아서 락 없이 여러 스레드가 써도 된다.
+ * 지울 수는 없다. delete 가 쌓이면 오탐률이 올라가니 가끔 새로 만들어서 바꾼다.
+ */
+public class MemberBloomFilter {
+
+    private final AtomicLongArray words;
+    private final long bitSize;
+    private final int hashCount;
+
+    /**
+     * @param expectedInsertions 넣을 회원 수 예상치
+     * @param fpp 원하는 오탐률 (0.01 = 1%)
+     */
+    public MemberBloomFilter(long expectedInsertions, double fpp) {
+        if (expectedInsertions <= 0 || fpp <= 0 || fpp >= 1) {
+            throw new IllegalArgumentException("expectedInsertions=" + expectedInsertions + " fpp=" + fpp);
+        }
+        //m = -n ln p / (ln 2)^2, k = m/n ln 2
+        long bits = (long) Math.ceil(-expectedInsertions * Math.log(fpp) / (Math.log(2) * Math.log(2)));
+        int wordCount = (int) Math.max(1, (bits + 63) >>> 6);
+        this.words = new AtomicLongArray(wordCount);
+        this.bitSize = (long) wordCount << 6;
+        this.hashCount = Math.max(1, (int) Math.round((double) bitSize / expectedInsertions * Math.log(2)));
+    }
+
+    public void put(String memberId) {
+        long hash = hash(memberId);
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        for (int i = 1; i <= hashCount; i++) {
+            long bit = index(h1 + i * h2);
+            int word = (int) (bit >>> 6);
+            long mask = 1L << bit;
+            long current = words.get(word);
+            while ((current & mask) == 0 && !words.compareAndSet(word, current, current | mask)) {
+                current = words.get(word);
+            }
+        }
+    }
+
+    public boolean mightContain(String memberId) {
+        long hash = hash(memberId);
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        for (int i = 1; i <= hashCount; i++) {
+            long bit = index(h1 + i * h2);
+            if ((words.get((int) (bit >>> 6)) & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 켜진 비트 비율로 지금 오탐률을 추정한다. (켜진 비율 ^ k)
+     */
+    public double expectedFpp() {
+        long set = 0;
+        for (int i = 0; i < words.length(); i++) {
+            set += Long.bitCount(words.get(i));
+        }
+        return Math.pow((double) set / bitSize, hashCount);
+    }
+
+    public long getBitSize() {
+        return bitSize;
+    }
+
+    public int getHashCount() {
+        return hashCount;
+    }
+
+    private long index(int combined) {
+        //음수면 뒤집어서 양수로 (Kirsch-Mitzenmacher 이중 해싱)
+        return (combined < 0 ? ~combined : combined) % bitSize;
+    }
+
+    //64비트 FNV-1a 에 마무리 섞기. String.hashCode 는 32비트라 해시 두개를 뽑기에 모자라다.
+    private static long hash(String memberId) {
+        long h = 0xcbf29ce484222325L;
+        for (byte b : memberId.getBytes(StandardCharsets.UTF_8)) {
+            h ^= (b & 0xff);
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        return h;
+    }
+}
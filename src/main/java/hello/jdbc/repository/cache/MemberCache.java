@@ -0,0 +1,207 @@
+package hello.jdbc.repository.cache;
+
+import hello.jdbc.domain.Member;
+
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 회원 캐시 (memberId -> Member). 외부 캐시 서버 없이 JVM 메모리에 둔다.
+ *
+ * - 크기 제한 : 세그먼트로 나눈 LRU. memberId 해시로 세그먼트를 고르고 세그먼트마다 락을 따로 잡는다.
+ *   락 하나짜리 LRU 보다 경합이 세그먼트 수만큼 줄고, 세그먼트 안에서는 정확한 LRU 다.
+ * - TTL : 넣은 시각 기준으로 ttl 이 지나면 꺼낼 때 버린다.
+ * - 통계 : hit / miss / eviction / expiration. LongAdder 라서 여러 스레드가 올려도 싸다.
+ *
+ * Member 는 가변 객체라서 넣을 때 / 꺼낼 때 복사한다. 호출한 쪽에서 setMoney 해도 캐시가 바뀌지 않는다.
+ *
+ * 오래된 값이 다시 들어가는 문제 - DB에서 읽는 사이에 다른 스레드가 update 하고 invalidate 하면,
+ * 먼저 읽어둔 옛날 값이 invalidate 뒤에 들어갈 수 있다. 그래서 읽기 전에 stamp() 를 받아두고
+ * put 할 때 그 사이 invalidate 가 있었으면 넣지 않는다. (invalidate 횟수 하나로 판단, 쓰기가 많으면 put 이 좀 덜 된다)
+ */
+public class MemberCache {
+
+    private static final int SEGMENTS = 16;
+    private static final int EXPIRED_SCAN = 8;
+
+    private final Segment[] segments = new Segment[SEGMENTS];
+    private final long ttlNanos;
+    private final AtomicLong invalidationStamp = new AtomicLong();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder expirations = new LongAdder();
+
+    public MemberCache(int maximumSize, Duration ttl) {
+        if (maximumSize < SEGMENTS) {
+            throw new IllegalArgumentException("maximumSize 는 " + SEGMENTS + " 이상이어야 한다. maximumSize=" + maximumSize);
+        }
+        int segmentSize = maximumSize / SEGMENTS;
+        for (int i = 0; i < SEGMENTS; i++) {
+            segments[i] = new Segment(segmentSize);
+        }
+        this.ttlNanos = ttl.toNanos();
+    }
+
+    /**
+     * @return 캐시에 있으면 복사본, 없거나 TTL 이 지났으면 null
+     */
+    public Member get(String memberId) {
+        Segment segment = segmentFor(memberId);
+        CacheEntry entry;
+        synchronized (segment) {
+            entry = segment.get(memberId);      //access order 라서 get 만 해도 가장 최근으로 옮겨진다.
+            if (entry != null && entry.isExpired(System.nanoTime())) {
+                segment.remove(memberId);
+                expirations.increment();
+                entry = null;
+            }
+        }
+        if (entry == null) {
+            misses.increment();
+            return null;
+        }
+        hits.increment();
+        return Member.copyOf(entry.member);
+    }
+
+    /**
+     * DB에서 읽기 전에 받아둔다. put 할 때 넘긴다.
+     */
+    public long stamp() {
+        return invalidationStamp.get();
+    }
+
+    /**
+     * stamp 를 받은 뒤로 invalidate 가 없었을 때만 넣는다.
+     */
+    public void put(Member member, long stamp) {
+        if (invalidationStamp.get() != stamp) {
+            return;
+        }
+        String memberId = member.getMemberId();
+        Segment segment = segmentFor(memberId);
+        CacheEntry entry = new CacheEntry(Member.copyOf(member), System.nanoTime() + ttlNanos);
+        synchronized (segment) {
+            segment.put(memberId, entry);
+        }
+        //넣는 사이에 invalidate 가 끼어들었으면 방금 넣은 것을 다시 뺀다.
+        if (invalidationStamp.get() != stamp) {
+            synchronized (segment) {
+                segment.remove(memberId, entry);
+            }
+        }
+    }
+
+    public void invalidate(String memberId) {
+        invalidationStamp.incrementAndGet();        //stamp 를 먼저 올리고 지운다. 순서가 바뀌면 지운 뒤에 옛날 값이 들어갈 수 있다.
+        Segment segment = segmentFor(memberId);
+        synchronized (segment) {
+            segment.remove(memberId);
+        }
+    }
+
+    public void invalidateAll() {
+        invalidationStamp.incrementAndGet();
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                segment.clear();
+            }
+        }
+    }
+
+    public long size() {
+        long size = 0;
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                size += segment.size();
+            }
+        }
+        return size;
+    }
+
+    private Segment segmentFor(String memberId) {
+        int h = memberId.hashCode();
+        h ^= (h >>> 16);        //HashMap 처럼 상위 비트를 섞는다.
+        return segments[h & (SEGMENTS - 1)];
+    }
+
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    public long getEvictionCount() {
+        return evictions.sum();
+    }
+
+    public long getExpirationCount() {
+        return expirations.sum();
+    }
+
+    public double getHitRate() {
+        long hit = getHitCount();
+        long total = hit + getMissCount();
+        return total == 0 ? 0.0 : (double) hit / total;
+    }
+
+    @Override
+    public String toString() {
+        return "MemberCache(size=" + size() + ", hits=" + getHitCount() + ", misses=" + getMissCount()
+                + ", evictions=" + getEvictionCount() + ", expirations=" + getExpirationCount()
+                + ", hitRate=" + String.format("%.3f", getHitRate()) + ")";
+    }
+
+    private static class CacheEntry {
+        private final Member member;
+        private final long expiresAtNanos;
+
+        private CacheEntry(Member member, long expiresAtNanos) {
+            this.member = member;
+            this.expiresAtNanos = expiresAtNanos;
+        }
+
+        private boolean isExpired(long now) {
+            return now - expiresAtNanos >= 0;
+        }
+    }
+
+    /**
+     * access order LinkedHashMap. 꽉 차면 가장 오래 안쓴 것부터 뺀다. 항상 segment 락을 잡고 쓴다.
+     */
+    private class Segment extends LinkedHashMap<String, CacheEntry> {
+        private final int capacity;
+
+        private Segment(int capacity) {
+            super(16, 0.75f, true);
+            this.capacity = capacity;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, CacheEntry> eldest) {
+            if (size() <= capacity) {
+                return false;
+            }
+            //앞쪽(오래 안쓴 것) 몇 개 중에 만료된 것이 있으면 그걸 먼저 치운다.
+            long now = System.nanoTime();
+            Iterator<CacheEntry> it = values().iterator();
+            for (int i = 0; i < EXPIRED_SCAN && it.hasNext(); i++) {
+                if (it.next().isExpired(now)) {
+                    it.remove();
+                    expirations.increment();
+                    return false;
+                }
+            }
+            evictions.increment();
+            return true;
+        }
+    }
+}
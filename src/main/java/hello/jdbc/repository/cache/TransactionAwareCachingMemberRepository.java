@@ -0,0 +1,249 @@
+package hello.jdbc.repository.cache;
+
+import hello.jdbc.domain.Member;
+import hello.jdbc.repository.MemberRepository;
+import hello.jdbc.repository.SaveResult;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * 트랜잭션을 아는 읽기 캐시.
+ *
+ * CachingMemberRepository 는 쓰자마자 캐시를 지운다. 그런데 트랜잭션 안이면 아직 커밋 전이라서,
+ * 지운 직후 다른 스레드가 DB에서 옛날 값(커밋된 값)을 읽어 다시 캐시에 넣으면 커밋 후에도 그 옛날 값이 남는다.
+ *
+ * 그래서 트랜잭션 안의 쓰기는 트랜잭션별 버퍼(TxBuffer)에만 기록한다.
+ * - 커밋되면 (afterCompletion) 버퍼에 기록된 회원을 캐시에서 지운다.
+ * - 롤백되면 버퍼만 버린다. 공유 캐시는 한번도 안 건드렸으니 그대로다. (MemberServiceV4 의 "ex" 롤백)
+ * - 트랜잭션 안에서 다시 읽으면 버퍼에 있는 값을 준다. (내가 쓴 값을 DB 왕복 없이 본다)
+ *   값을 모르는 쓰기(debitAll, delete 등)는 DB 에서 다시 읽는다. 같은 트랜잭션 커넥션이라 내 쓰기가 보인다.
+ *
+ * 버퍼는 TransactionSynchronizationManager 에 이 리포지토리를 key 로 바인딩한다. (스레드 + 트랜잭션 단위)
+ * 트랜잭션 동기화가 없으면(트랜잭션 밖) CachingMemberRepository 와 똑같이 동작한다.
+ */
+@Slf4j
+public class TransactionAwareCachingMemberRepository extends CachingMemberRepository {
+
+    public TransactionAwareCachingMemberRepository(MemberRepository target, MemberCache cache) {
+        super(target, cache);
+    }
+
+    @Override
+    public Member findById(String memberId) {
+        TxBuffer buffer = currentBuffer(false);
+        if (buffer != null && buffer.touched.contains(memberId)) {
+            Member staged = buffer.staged.get(memberId);
+            if (staged != null) {
+                return Member.copyOf(staged);
+            }
+            //이 트랜잭션에서 바꿨는데 값을 모른다. 커밋 전 값이라 공유 캐시에는 넣지 않고 버퍼에만 둔다.
+            Member member = getTarget().findById(memberId);
+            buffer.staged.put(memberId, Member.copyOf(member));
+            return member;
+        }
+        return super.findById(memberId);
+    }
+
+    @Override
+    public Optional<Member> findOptional(String memberId) {
+        TxBuffer buffer = currentBuffer(false);
+        if (buffer != null && buffer.touched.contains(memberId)) {
+            Member staged = buffer.staged.get(memberId);
+            if (staged != null) {
+                return Optional.of(Member.copyOf(staged));
+            }
+            Optional<Member> member = getTarget().findOptional(memberId);
+            member.ifPresent(m -> buffer.staged.put(memberId, Member.copyOf(m)));
+            return member;
+        }
+        return super.findOptional(memberId);
+    }
+
+    @Override
+    public Map<String, Member> findAllById(Collection<String> memberIds) {
+        TxBuffer buffer = currentBuffer(false);
+        if (buffer == null) {
+            return super.findAllById(memberIds);
+        }
+        Map<String, Member> result = new HashMap<>();
+        Set<String> unknown = new LinkedHashSet<>();
+        Set<String> rest = new LinkedHashSet<>();
+        for (String memberId : memberIds) {
+            if (!buffer.touched.contains(memberId)) {
+                rest.add(memberId);
+                continue;
+            }
+            Member staged = buffer.staged.get(memberId);
+            if (staged != null) {
+                result.put(memberId, Member.copyOf(staged));
+            } else {
+                unknown.add(memberId);
+            }
+        }
+        if (!unknown.isEmpty()) {
+            //이 트랜잭션에서 바꿨는데 값을 모르는 것은 DB 에서 한번에 읽고 버퍼에 둔다. 삭제된 것은 결과에서 빠진다.
+            for (Member member : getTarget().findAllById(unknown).values()) {
+                buffer.staged.put(member.getMemberId(), Member.copyOf(member));
+                result.put(member.getMemberId(), member);
+            }
+        }
+        result.putAll(super.findAllById(rest));
+        return result;
+    }
+
+    @Override
+    public Member save(Member member) {
+        Member saved = super.save(member);
+        stage(member.getMemberId(), member.getMoney());
+        return saved;
+    }
+
+    @Override
+    public SaveResult trySave(Member member) {
+        SaveResult result = super.trySave(member);
+        if (result.isSaved()) {
+            stage(member.getMemberId(), member.getMoney());
+        }
+        return result;
+    }
+
+    @Override
+    public Member upsert(Member member) {
+        Member saved = super.upsert(member);
+        stage(member.getMemberId(), member.getMoney());
+        return saved;
+    }
+
+    @Override
+    public void update(String memberId, int money) {
+        super.update(memberId, money);
+        stage(memberId, money);
+    }
+
+    @Override
+    public boolean debit(String memberId, int amount) {
+        Member before = staged(memberId);
+        boolean result = super.debit(memberId, amount);
+        restage(before, result ? -amount : 0);
+        return result;
+    }
+
+    @Override
+    public boolean credit(String memberId, int amount) {
+        Member before = staged(memberId);
+        boolean result = super.credit(memberId, amount);
+        restage(before, result ? amount : 0);
+        return result;
+    }
+
+    /**
+     * 트랜잭션 안이면 지우는 것을 커밋 후로 미룬다.
+     */
+    @Override
+    protected void evict(String memberId) {
+        TxBuffer buffer = currentBuffer(true);
+        if (buffer == null) {
+            super.evict(memberId);
+            return;
+        }
+        buffer.touched.add(memberId);
+        buffer.staged.remove(memberId);     //값은 쓰기 메서드가 알면 다시 넣는다.
+    }
+
+    private void stage(String memberId, int money) {
+        TxBuffer buffer = currentBuffer(false);
+        if (buffer != null) {
+            buffer.staged.put(memberId, new Member(memberId, money));
+        }
+    }
+
+    private Member staged(String memberId) {
+        TxBuffer buffer = currentBuffer(false);
+        return buffer == null ? null : buffer.staged.get(memberId);
+    }
+
+    /**
+     * 상대값 쓰기는 쓰기 전에 버퍼에 값이 있었을 때만 따라 바꾼다. 없었으면 다음 읽기에서 DB 로 간다.
+     * (evict 가 staged 를 지우기 때문에 쓰기 전에 꺼내둔 값을 다시 넣는다)
+     */
+    private void restage(Member before, int delta) {
+        TxBuffer buffer = currentBuffer(false);
+        if (buffer != null && before != null) {
+            before.setMoney(before.getMoney() + delta);
+            buffer.staged.put(before.getMemberId(), before);
+        }
+    }
+
+    private TxBuffer currentBuffer(boolean create) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            return null;
+        }
+        TxBuffer buffer = (TxBuffer) TransactionSynchronizationManager.getResource(this);
+        if (buffer == null && create) {
+            buffer = new TxBuffer();
+            TransactionSynchronizationManager.bindResource(this, buffer);
+            TransactionSynchronizationManager.registerSynchronization(new BufferSynchronization(buffer));
+        }
+        return buffer;
+    }
+
+    /**
+     * 트랜잭션 하나의 쓰기 기록. 트랜잭션은 스레드 하나에서만 돌기 때문에 동기화가 필요 없다.
+     */
+    private static class TxBuffer {
+        private final Set<String> touched = new HashSet<>();        //이 트랜잭션에서 쓴 회원. 커밋 후 캐시에서 지운다.
+        private final Map<String, Member> staged = new HashMap<>();  //그 중 값을 아는 것. 트랜잭션 안의 읽기에 쓴다.
+    }
+
+    private class BufferSynchronization implements TransactionSynchronization {
+
+        private final TxBuffer buffer;
+
+        private BufferSynchronization(TxBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        //REQUIRES_NEW 로 바깥 트랜잭션이 잠시 멈추면 버퍼도 같이 내려놓는다.
+        @Override
+        public void suspend() {
+            TransactionSynchronizationManager.unbindResourceIfPossible(TransactionAwareCachingMemberRepository.this);
+        }
+
+        @Override
+        public void resume() {
+            TransactionSynchronizationManager.bindResource(TransactionAwareCachingMemberRepository.this, buffer);
+        }
+
+        //커밋 직전에도 한번 지운다. 커밋 전에 캐시에 있던 옛날 값이 커밋 직후에 읽히는 구간을 줄인다.
+        @Override
+        public void beforeCommit(boolean readOnly) {
+            invalidateTouched();
+        }
+
+        @Override
+        public void afterCompletion(int status) {
+            TransactionSynchronizationManager.unbindResourceIfPossible(TransactionAwareCachingMemberRepository.this);
+            if (status == STATUS_ROLLED_BACK) {
+                log.debug("rollback, 캐시 반영 안함 touched={}", buffer.touched);
+                return;
+            }
+            //커밋(또는 결과를 모름)이면 지운다. 다음 읽기에서 커밋된 값을 다시 읽는다.
+            invalidateTouched();
+        }
+
+        private void invalidateTouched() {
+            for (String memberId : buffer.touched) {
+                cache.invalidate(memberId);
+            }
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package hello.jdbc.repository.coalesce;
+
+import hello.jdbc.domain.Member;
+import hello.jdbc.repository.MemberRepository;
+import hello.jdbc.support.GroupCollector;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * findById 마이크로 배치 로더 (DataLoader 방식)
+ * 여러 스레드가 거의 동시에 보낸 id 조회를 모아서 findAllById(IN 절) 한번으로 보낸다.
+ * maxBatchSize 개가 모이거나, 첫 요청이 들어오고 maxDelayMicros 가 지나면 바로 보낸다. (GroupCollector, TransferQueue 와 같이 쓴다)
+ *
+ * 같은 배치 안의 같은 id 는 한번만 조회하고 결과를 나눠 준다.
+ * 없는 id 는 NoSuchElementException, 조회 자체가 실패하면 그 배치의 요청 전부 그 예외로 끝난다.
+ */
+@Slf4j
+public class BatchingMemberLoader implements AutoCloseable {
+
+    private final MemberRepository memberRepository;
+    private final GroupCollector<Request> collector;
+
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder batches = new LongAdder();
+
+    public BatchingMemberLoader(MemberRepository memberRepository, int maxBatchSize, long maxDelayMicros) {
+        this.memberRepository = memberRepository;
+        this.collector = new GroupCollector<>("member-batch-loader", maxBatchSize, maxDelayMicros,
+                this::dispatch, (request, e) -> request.future.completeExceptionally(e));
+    }
+
+    public CompletableFuture<Member> load(String memberId) {
+        Request request = new Request(memberId);
+        collector.submit(request);
+        requests.increment();
+        return request.future;
+    }
+
+    private void dispatch(List<Request> batch) {
+        batches.increment();
+        Map<String, List<Request>> byId = new HashMap<>();
+        for (Request request : batch) {
+            byId.computeIfAbsent(request.memberId, id -> new ArrayList<>(1)).add(request);
+        }
+
+        Map<String, Member> found;
+        try {
+            found = memberRepository.findAllById(byId.keySet());
+        } catch (RuntimeException e) {
+            log.warn("batch load 실패 size={}", byId.size(), e);
+            for (Request request : batch) {
+                request.future.completeExceptionally(e);
+            }
+            return;
+        }
+
+        for (Map.Entry<String, List<Request>> entry : byId.entrySet()) {
+            Member member = found.get(entry.getKey());
+            for (Request request : entry.getValue()) {
+                if (member == null) {
+                    request.future.completeExceptionally(new NoSuchElementException("member not found memberId=" + entry.getKey()));
+                } else {
+                    request.future.complete(Member.copyOf(member));     //같은 id 를 여러 요청이 받으면 각자 복사본
+                }
+            }
+        }
+    }
+
+    /**
+     * 호출 수 대비 배치 수. 높을수록 많이 묶였다.
+     */
+    public double getAverageBatchSize() {
+        long batchCount = batches.sum();
+        return batchCount == 0 ? 0.0 : (double) requests.sum() / batchCount;
+    }
+
+    public long getBatchCount() {
+        return batches.sum();
+    }
+
+    /**
+     * 남은 요청까지 처리하고 종료한다. 10초 안에 못 끝낸 요청은 예외로 끝난다.
+     */
+    @Override
+    public void close() throws InterruptedException {
+        collector.close();
+    }
+
+    private static class Request {
+        private final String memberId;
+        private final CompletableFuture<Member> future = new CompletableFuture<>();
+
+        private Request(String memberId) {
+            this.memberId = memberId;
+        }
+    }
+}
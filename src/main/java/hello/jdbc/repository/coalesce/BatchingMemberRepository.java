@@ -0,0 +1,31 @@
+package hello.jdbc.repository.coalesce;
+
+import hello.jdbc.domain.Member;
+import hello.jdbc.repository.DelegatingMemberRepository;
+import hello.jdbc.repository.MemberRepository;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * findById 를 BatchingMemberLoader 로 보내는 데코레이터.
+ * 호출하는 쪽은 지금처럼 id 하나씩 findById 하면 되고, 동시에 들어온 호출은 IN 절 쿼리 하나로 묶인다.
+ * 호출한 스레드는 배치 창(maxDelayMicros)만큼 더 기다릴 수 있다. 대신 커넥션 사용은 배치 수만큼으로 준다.
+ *
+ * 트랜잭션 안에서는 묶지 않는다. (로더 스레드는 그 트랜잭션 커넥션을 모른다)
+ */
+public class BatchingMemberRepository extends DelegatingMemberRepository {
+
+    private final BatchingMemberLoader loader;
+
+    public BatchingMemberRepository(MemberRepository target, BatchingMemberLoader loader) {
+        super(target);
+        this.loader = loader;
+    }
+
+    @Override
+    public Member findById(String memberId) {
+        if (TransactionSynchronizationManager.isActualTransactionActive()) {
+            return super.findById(memberId);
+        }
+        return Futures.await(loader.load(memberId));
+    }
+}
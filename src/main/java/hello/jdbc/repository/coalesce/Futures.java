@@ -0,0 +1,32 @@
+package hello.jdbc.repository.coalesce;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * 다른 스레드가 채워주는 결과를 기다린다.
+ * 실패했으면 원래 예외(NoSuchElementException, DataAccessException 등)를 그대로 던진다. CompletionException 으로 감싸지 않는다.
+ */
+final class Futures {
+
+    private Futures() {
+    }
+
+    static <T> T await(CompletableFuture<T> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("조회 결과를 기다리다 인터럽트", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IllegalStateException(cause);
+        }
+    }
+}
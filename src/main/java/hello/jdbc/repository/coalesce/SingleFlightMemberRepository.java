@@ -0,0 +1,69 @@
+package hello.jdbc.repository.coalesce;
+
+import hello.jdbc.domain.Member;
+import hello.jdbc.repository.DelegatingMemberRepository;
+import hello.jdbc.repository.MemberRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * single-flight - 같은 memberId 로 동시에 들어온 findById 는 쿼리 하나만 보내고 결과를 나눠 갖는다.
+ *
+ * 처음 온 스레드(leader)가 target 에서 조회하고, 그 사이 같은 id 로 온 스레드는 leader 의 결과를 기다린다.
+ * 인기 계좌에 수백 스레드가 몰려도 커넥션은 id 개수만큼만 쓴다.
+ * 실패도 같이 나눠 갖는다. 없는 회원이면 기다리던 스레드 모두 같은 NoSuchElementException 을 받는다.
+ * 조회가 끝나면 바로 빠지기 때문에 캐시는 아니다. 다음 호출은 다시 DB 로 간다.
+ *
+ * 트랜잭션 안에서는 쓰지 않는다. 그 트랜잭션 커넥션으로 읽어야 내가 쓴 값이 보이기 때문이다.
+ */
+@Slf4j
+public class SingleFlightMemberRepository extends DelegatingMemberRepository {
+
+    private final Map<String, CompletableFuture<Member>> inFlight = new ConcurrentHashMap<>();
+
+    private final LongAdder queries = new LongAdder();      //실제로 target 에 보낸 조회
+    private final LongAdder shared = new LongAdder();       //다른 스레드 결과를 받아간 조회
+
+    public SingleFlightMemberRepository(MemberRepository target) {
+        super(target);
+    }
+
+    @Override
+    public Member findById(String memberId) {
+        if (TransactionSynchronizationManager.isActualTransactionActive()) {
+            return super.findById(memberId);
+        }
+
+        CompletableFuture<Member> call = new CompletableFuture<>();
+        CompletableFuture<Member> leader = inFlight.putIfAbsent(memberId, call);
+        if (leader != null) {
+            shared.increment();
+            return Member.copyOf(Futures.await(leader));     //Member 는 가변이라 각자 복사본을 준다.
+        }
+
+        queries.increment();
+        try {
+            Member member = super.findById(memberId);
+            call.complete(Member.copyOf(member));
+            return member;
+        } catch (RuntimeException | Error e) {
+            call.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(memberId, call);
+        }
+    }
+
+    public long getQueryCount() {
+        return queries.sum();
+    }
+
+    public long getSharedCount() {
+        return shared.sum();
+    }
+}
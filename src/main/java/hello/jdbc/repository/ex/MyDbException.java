@@ -18,4 +18,16 @@ public class MyDbException extends RuntimeException {
     public MyDbException(Throwable cause) {
         super(cause);
     }
+
+    //스택 트레이스를 만들지 않는 예외용. 자주 터지고 잡아서 처리하는 예외는 fillInStackTrace 비용을 아낀다.
+    protected MyDbException(String message, Throwable cause, boolean writableStackTrace) {
+        super(message, cause, false, writableStackTrace);
+    }
+
+    /**
+     * 스택 트레이스 없는 MyDbException. 원인(cause)의 스택 트레이스는 그대로 남는다.
+     */
+    public static MyDbException stackless(String message, Throwable cause) {
+        return new MyDbException(message, cause, false);
+    }
 }
@@ -15,4 +15,16 @@ public class MyDuplicateKeyException extends MyDbException {
     public MyDuplicateKeyException(Throwable cause) {
         super(cause);
     }
+
+    protected MyDuplicateKeyException(String message, Throwable cause, boolean writableStackTrace) {
+        super(message, cause, writableStackTrace);
+    }
+
+    /**
+     * 스택 트레이스 없는 키 중복 예외. 잡아서 복구하는 쪽(다른 id 로 다시 저장 등)에서는 어디서 던졌는지 볼 일이 없다.
+     * 예외 없이 처리하려면 trySave 를 쓴다.
+     */
+    public static MyDuplicateKeyException stackless(String message, Throwable cause) {
+        return new MyDuplicateKeyException(message, cause, false);
+    }
 }
@@ -0,0 +1,12 @@
+package hello.jdbc.repository.ex;
+
+/**
+ * 낙관적 락 충돌. update ... where version = ? 가 0건이면 던진다.
+ * 다시 읽고 재시도하면 되는 예외라서 스택 트레이스는 만들지 않는다.
+ */
+public class MyOptimisticLockException extends MyDbException {
+
+    public MyOptimisticLockException(String message) {
+        super(message, null, false);
+    }
+}
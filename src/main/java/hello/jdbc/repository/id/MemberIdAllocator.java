@@ -0,0 +1,96 @@
+package hello.jdbc.repository.id;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import javax.sql.DataSource;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 회원 id 를 블록 단위로 미리 받아두고 메모리에서 나눠주는 발급기. (hi-lo)
+ *
+ * DB 시퀀스(member_id_seq)는 blockSize 씩 증가한다. (pooled, schema.sql 의 increment by)
+ * 값 하나(hi)를 받으면 [hi, hi + blockSize) 구간을 통째로 쓴다.
+ * 시퀀스는 여러 서버가 같이 써도 같은 값을 두번 주지 않고 롤백돼도 되돌아가지 않으니 구간이 겹치지 않는다.
+ * 구간 크기는 시퀀스의 increment 로 정해지니, 시작할 때 blockSize 와 같은지 확인한다.
+ * (1씩 증가하는 시퀀스에 hi * blockSize 를 쓰면 blockSize 가 다른 발급기끼리 구간이 겹친다)
+ * 그래서 발급한 id 로 insert 하면 키 중복이 날 일이 없다. (MyDuplicateKeyException 잡고 다시 save 하는 루프가 필요 없다)
+ *
+ * 블록은 스레드마다 따로 가진다. 블록 안에서는 자기 스레드만 만지니 락도 CAS 도 없다.
+ * DB 에는 blockSize 개마다 한번만 간다.
+ * 대신 id 는 스레드 사이에서 순서가 섞이고, 서버가 재시작하거나 스레드가 끝나면 쓰다 남은 구간은 버려진다. (빈 번호가 생긴다)
+ *
+ * id 는 prefix + 36진수 번호다. member_id 컬럼 길이(varchar(10))를 넘지 않게 prefix 는 짧게 쓴다.
+ */
+@Slf4j
+public class MemberIdAllocator {
+
+    public static final String SEQUENCE = "member_id_seq";
+    public static final int DEFAULT_BLOCK_SIZE = 100;       //schema.sql 의 increment by 와 같아야 한다.
+
+    private final JdbcTemplate template;
+    private final String prefix;
+    private final int blockSize;
+    private final ThreadLocal<Block> blocks = ThreadLocal.withInitial(Block::new);
+
+    private final LongAdder reservedBlocks = new LongAdder();
+
+    public MemberIdAllocator(DataSource dataSource, String prefix, int blockSize) {
+        if (blockSize <= 0) {
+            throw new IllegalArgumentException("blockSize=" + blockSize);
+        }
+        this.template = new JdbcTemplate(dataSource);
+        this.prefix = prefix;
+        this.blockSize = blockSize;
+        checkSequence();
+    }
+
+    public MemberIdAllocator(DataSource dataSource, String prefix) {
+        this(dataSource, prefix, DEFAULT_BLOCK_SIZE);
+    }
+
+    private void checkSequence() {
+        List<Long> increments = template.queryForList(
+                "select increment from information_schema.sequences where sequence_name = ?", Long.class, SEQUENCE.toUpperCase());
+        if (increments.isEmpty()) {
+            throw new IllegalStateException("시퀀스가 없다. schema.sql 을 먼저 실행해야 한다. sequence=" + SEQUENCE);
+        }
+        if (increments.get(0) != blockSize) {
+            throw new IllegalStateException("시퀀스 increment 와 blockSize 가 다르면 구간이 겹친다. sequence=" + SEQUENCE
+                    + " increment=" + increments.get(0) + " blockSize=" + blockSize);
+        }
+    }
+
+    public String nextId() {
+        return prefix + Long.toString(nextValue(), Character.MAX_RADIX);
+    }
+
+    public long nextValue() {
+        Block block = blocks.get();
+        if (block.next == block.limit) {
+            reserve(block);
+        }
+        return block.next++;
+    }
+
+    private void reserve(Block block) {
+        //트랜잭션 안에서 불려도 상관없다. 시퀀스는 롤백되지 않는다.
+        Long hi = template.queryForObject("select next value for " + SEQUENCE, Long.class);
+        block.next = hi;
+        block.limit = Math.addExact(hi, blockSize);
+        reservedBlocks.increment();
+        log.debug("회원 id 블록 예약 hi={} range=[{}, {})", hi, block.next, block.limit);
+    }
+
+    /** DB 에 가서 블록을 받아온 수 */
+    public long getReservedBlockCount() {
+        return reservedBlocks.sum();
+    }
+
+    //자기 스레드만 만지니 volatile 도 필요 없다.
+    private static class Block {
+        private long next;
+        private long limit;
+    }
+}
@@ -0,0 +1,250 @@
+package hello.jdbc.repository.writebehind;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * 회원 잔액 update 를 남기는 로컬 append-only 로그. (write-ahead log)
+ *
+ * 파일은 세그먼트 단위다. (member-wal-00000000000000000001.log ...)
+ * DB 에 반영(flush)할 때마다 rotate 해서 새 세그먼트로 넘어가고, 반영이 끝난 세그먼트는 지운다.
+ *
+ * 레코드 = [id 길이 short][id UTF-8][money int][crc32 int]
+ * 레코드 번호(lsn) = 세그먼트 번호 << 32 | 세그먼트 안 순번. 파일에 따로 쓰지 않고 위치로 정해진다.
+ * 세그먼트 번호가 계속 커지니 lsn 도 계속 커진다. 반영한 쪽은 lsn 을 보고 이미 반영한 레코드를 거른다.
+ * 마지막 레코드가 쓰다 만 채로 죽었으면 길이가 모자라거나 crc 가 안맞는다. 복구할 때 거기서 멈춘다.
+ *
+ * append 는 메모리 버퍼에만 쓴다. (수 마이크로초)
+ * 디스크 fsync 는 sync() 를 주기적으로 불러서 여러 건을 한번에 한다. (group fsync)
+ * 그래서 마지막 sync 이후에 쓴 것은 프로세스가 죽으면 잃을 수 있다. 잃어도 되는 데이터에만 쓴다.
+ */
+@Slf4j
+public class WriteAheadLog implements AutoCloseable {
+
+    private static final String PREFIX = "member-wal-";
+    private static final String SUFFIX = ".log";
+
+    private final Path dir;
+    private final CRC32 crc = new CRC32();
+
+    private long segmentNo;
+    private int recordNo;
+    private FileOutputStream fos;
+    private DataOutputStream out;
+
+    public WriteAheadLog(Path dir) {
+        this(dir, 0);
+    }
+
+    /**
+     * @param minSegmentNo 이 번호 다음부터 쓴다. 세그먼트를 다 지운 뒤 다시 열어도 lsn 이 이미 반영한 lsn 보다 커야 한다.
+     */
+    public WriteAheadLog(Path dir, long minSegmentNo) {
+        this.dir = dir;
+        try {
+            Files.createDirectories(dir);
+            List<Path> segments = segments(dir);
+            long lastSegmentNo = segments.isEmpty() ? 0 : segmentNo(segments.get(segments.size() - 1));
+            open(Math.max(lastSegmentNo, minSegmentNo) + 1);
+        } catch (IOException e) {
+            throw new UncheckedIOException("WAL 열기 실패 dir=" + dir, e);
+        }
+    }
+
+    /**
+     * @return 이 레코드의 lsn
+     */
+    public synchronized long append(String memberId, int money) {
+        byte[] id = memberId.getBytes(StandardCharsets.UTF_8);
+        crc.reset();
+        crc.update(id);
+        crc.update(money >>> 24);
+        crc.update(money >>> 16);
+        crc.update(money >>> 8);
+        crc.update(money);
+        try {
+            out.writeShort(id.length);
+            out.write(id);
+            out.writeInt(money);
+            out.writeInt((int) crc.getValue());
+        } catch (IOException e) {
+            throw new UncheckedIOException("WAL 쓰기 실패 segment=" + segmentNo, e);
+        }
+        return lsn(segmentNo, recordNo++);
+    }
+
+    /**
+     * 버퍼를 OS 로 내리고 fsync 한다.
+     * fsync 는 락 밖에서 한다. fsync 하는 동안에도 append 는 버퍼에 계속 쓸 수 있다.
+     */
+    public void sync() {
+        FileChannel channel;
+        synchronized (this) {
+            try {
+                out.flush();
+            } catch (IOException e) {
+                throw new UncheckedIOException("WAL flush 실패 segment=" + segmentNo, e);
+            }
+            channel = fos.getChannel();
+        }
+        try {
+            channel.force(false);
+        } catch (ClosedChannelException e) {
+            //그 사이 rotate 됐다. rotate 가 닫기 전에 fsync 했으니 괜찮다.
+        } catch (IOException e) {
+            throw new UncheckedIOException("WAL fsync 실패", e);
+        }
+    }
+
+    /**
+     * 지금 세그먼트를 fsync 하고 닫은 뒤 새 세그먼트를 연다.
+     * @return 닫은 세그먼트 번호. DB 반영이 끝나면 deleteUpTo 로 지운다.
+     */
+    public synchronized long rotate() {
+        long closed = segmentNo;
+        try {
+            out.flush();
+            fos.getChannel().force(false);
+            out.close();
+            open(segmentNo + 1);
+        } catch (IOException e) {
+            throw new UncheckedIOException("WAL rotate 실패 segment=" + closed, e);
+        }
+        return closed;
+    }
+
+    /**
+     * DB 반영이 끝난 세그먼트를 지운다.
+     */
+    public void deleteUpTo(long lastSegmentNo) {
+        deleteSegments(dir, lastSegmentNo);
+    }
+
+    static void deleteSegments(Path dir, long lastSegmentNo) {
+        try {
+            for (Path segment : segments(dir)) {
+                if (segmentNo(segment) <= lastSegmentNo) {
+                    Files.deleteIfExists(segment);
+                }
+            }
+        } catch (IOException e) {
+            //다음 flush 때 다시 지운다. 남은 세그먼트는 다음 복구 때 다시 읽히지만,
+            //반영한 쪽(WriteBehindMemberRepository)이 회원별로 반영한 lsn 을 DB 에 남겨서 이미 반영한 레코드는 건너뛴다.
+            //(lsn 없이 다시 반영하면 그 사이 debit 등으로 바뀐 잔액을 옛날 값으로 덮어쓴다)
+            log.warn("WAL 세그먼트 삭제 실패 upTo={}", lastSegmentNo, e);
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        try {
+            out.flush();
+            fos.getChannel().force(false);
+            out.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException("WAL 닫기 실패 segment=" + segmentNo, e);
+        }
+    }
+
+    private void open(long no) throws IOException {
+        segmentNo = no;
+        recordNo = 0;
+        fos = new FileOutputStream(dir.resolve(fileName(no)).toFile(), true);
+        out = new DataOutputStream(new BufferedOutputStream(fos, 64 * 1024));
+    }
+
+    /**
+     * dir 에 남아있는 세그먼트를 순서대로 읽어서 레코드마다 consumer 를 부른다.
+     * 쓰다 만 레코드(길이 부족, crc 불일치)를 만나면 그 세그먼트는 거기서 멈춘다.
+     * @return 읽은 마지막 세그먼트 번호 (없으면 0)
+     */
+    public static long replay(Path dir, RecordConsumer consumer) {
+        if (!Files.isDirectory(dir)) {
+            return 0;
+        }
+        long last = 0;
+        CRC32 crc = new CRC32();
+        try {
+            for (Path segment : segments(dir)) {
+                last = segmentNo(segment);
+                int records = 0;
+                try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(segment)))) {
+                    while (true) {
+                        byte[] id = new byte[in.readUnsignedShort()];
+                        in.readFully(id);
+                        int money = in.readInt();
+                        int expected = in.readInt();
+                        crc.reset();
+                        crc.update(id);
+                        crc.update(money >>> 24);
+                        crc.update(money >>> 16);
+                        crc.update(money >>> 8);
+                        crc.update(money);
+                        if ((int) crc.getValue() != expected) {
+                            log.warn("WAL crc 불일치, 여기까지만 복구 segment={} records={}", segment.getFileName(), records);
+                            break;
+                        }
+                        consumer.accept(new String(id, StandardCharsets.UTF_8), money, lsn(last, records));
+                        records++;
+                    }
+                } catch (EOFException e) {
+                    //정상 끝 또는 쓰다 만 마지막 레코드
+                }
+                log.info("WAL replay segment={} records={}", segment.getFileName(), records);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("WAL 복구 실패 dir=" + dir, e);
+        }
+        return last;
+    }
+
+    public static long lsn(long segmentNo, int recordNo) {
+        return segmentNo << 32 | recordNo;
+    }
+
+    public static long segmentOf(long lsn) {
+        return lsn >>> 32;
+    }
+
+    @FunctionalInterface
+    public interface RecordConsumer {
+        void accept(String memberId, int money, long lsn);
+    }
+
+    private static List<Path> segments(Path dir) throws IOException {
+        List<Path> segments = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir, PREFIX + "*" + SUFFIX)) {
+            for (Path path : stream) {
+                segments.add(path);
+            }
+        }
+        segments.sort(null);        //번호를 0 으로 채워서 이름 순서 = 번호 순서
+        return segments;
+    }
+
+    private static long segmentNo(Path segment) {
+        String name = segment.getFileName().toString();
+        return Long.parseLong(name.substring(PREFIX.length(), name.length() - SUFFIX.length()));
+    }
+
+    private static String fileName(long no) {
+        return String.format("%s%020d%s", PREFIX, no, SUFFIX);
+    }
+}
@@ -0,0 +1,415 @@
+package hello.jdbc.repository.writebehind;
+
+import hello.jdbc.domain.Member;
+import hello.jdbc.domain.MemberPage;
+import hello.jdbc.domain.Transfer;
+import hello.jdbc.repository.DelegatingMemberRepository;
+import hello.jdbc.repository.MemberRepository;
+import hello.jdbc.repository.SaveResult;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Collectors;
+
+/**
+ * write-behind 모드 - update 는 메모리와 로컬 WAL 에만 쓰고 바로 돌아온다. DB 반영은 주기적으로 모아서 한다.
+ * 포인트처럼 조금 늦게 반영돼도 되는 잔액에만 쓴다. 호출한 쪽의 트랜잭션과는 상관없이 반영된다.
+ *
+ * - update : WAL 버퍼에 쓰고 memberId 별 최신 값만 pending 에 남긴다. (같은 회원을 여러번 바꾸면 DB 에는 마지막 값만)
+ * - WAL fsync : fsyncIntervalMillis 마다 한번에 한다. 그 사이에 죽으면 그 구간은 잃는다.
+ * - flush : flushIntervalMillis 마다 pending 을 트랜잭션 하나로 DB 에 반영하고, 반영된 WAL 세그먼트를 지운다.
+ * - 복구 : 생성할 때 남아있는 WAL 을 읽어서(replay) DB 에 먼저 반영한다.
+ *
+ * 반영할 때 회원별로 반영한 WAL 레코드 번호(lsn)를 member_write_behind 테이블에 같이 남긴다. (schema.sql)
+ * 남은 lsn 보다 크지 않은 레코드는 건너뛴다. 그래서 세그먼트 삭제 전에 죽어서 같은 레코드를 다시 읽어도,
+ * 그 사이 debit 등으로 바뀐 잔액을 옛날 값으로 덮어쓰지 않는다. 늦게 반영되는 옛날 값이 새 값을 덮는 것도 막는다.
+ *
+ * update 가 아닌 쓰기(debit, delete 등)와 락/버전 조회는 그 회원의 pending 을 먼저 DB 에 반영하고 target 으로 보낸다.
+ * 그래야 나중에 반영되는 update 가 그 쓰기를 덮어쓰지 않는다.
+ * 이때는 호출한 쪽의 트랜잭션 안에서 반영한다. 새 트랜잭션으로 반영하면 바깥 트랜잭션이 이미 잡은 로우 락을 기다리다 멈춘다.
+ * 바깥 트랜잭션이 롤백되면 반영도 취소되고 pending 에 그대로 남아서 다음 flush 때 반영된다.
+ * 조회는 DB 값에 pending 을 덮어서 돌려준다. (내가 쓴 값이 보인다)
+ */
+@Slf4j
+public class WriteBehindMemberRepository extends DelegatingMemberRepository implements AutoCloseable {
+
+    private final JdbcTemplate template;
+    private final TransactionTemplate txTemplate;
+    private final TransactionTemplate callerTxTemplate;
+    private final WriteAheadLog wal;
+    private final Map<String, Pending> pending = new ConcurrentHashMap<>();
+
+    //update 는 read lock (동시에 여러개), flush 의 rotate + 스냅샷은 write lock.
+    //스냅샷에 들어간 값과 닫힌 WAL 세그먼트가 정확히 일치해야 반영 후 세그먼트를 지울 수 있다.
+    private final ReentrantReadWriteLock snapshotLock = new ReentrantReadWriteLock();
+    private final Object flushMonitor = new Object();
+    private final ScheduledExecutorService scheduler;
+
+    private final LongAdder updates = new LongAdder();
+    private final LongAdder flushedRows = new LongAdder();
+    private final LongAdder flushes = new LongAdder();
+
+    /**
+     * @param dataSource transactionManager 와 같은 DataSource. member_write_behind 에 lsn 을 남긴다.
+     */
+    public WriteBehindMemberRepository(MemberRepository target, DataSource dataSource, PlatformTransactionManager transactionManager,
+                                       Path walDir, long flushIntervalMillis, long fsyncIntervalMillis) {
+        super(target);
+        this.template = new JdbcTemplate(dataSource);
+        //주기 flush 는 누구의 트랜잭션도 아니다. 혹시 트랜잭션 안에서 불려도 따로 커밋한다.
+        this.txTemplate = new TransactionTemplate(transactionManager);
+        this.txTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        //debit 등에서 그 회원만 반영할 때는 호출한 쪽 트랜잭션에 참여한다. (없으면 새로)
+        this.callerTxTemplate = new TransactionTemplate(transactionManager);
+
+        recover(walDir);
+        //세그먼트를 다 지웠어도 새 lsn 은 이미 반영한 lsn 보다 커야 한다.
+        Long appliedLsn = template.queryForObject("select coalesce(max(lsn), 0) from member_write_behind", Long.class);
+        this.wal = new WriteAheadLog(walDir, WriteAheadLog.segmentOf(appliedLsn));
+
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "member-write-behind");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::syncQuietly, fsyncIntervalMillis, fsyncIntervalMillis, TimeUnit.MILLISECONDS);
+        scheduler.scheduleWithFixedDelay(this::flushQuietly, flushIntervalMillis, flushIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void update(String memberId, int money) {
+        snapshotLock.readLock().lock();
+        try {
+            long lsn = wal.append(memberId, money);
+            pending.put(memberId, new Pending(money, lsn));
+        } finally {
+            snapshotLock.readLock().unlock();
+        }
+        updates.increment();
+    }
+
+    /**
+     * pending 을 지금 DB 에 반영한다. 실패하면 pending 과 WAL 은 그대로 남고 다음 flush 때 다시 한다.
+     * 새 트랜잭션으로 반영하니, 반영할 회원의 로우 락을 잡은 트랜잭션 안에서는 부르지 않는다.
+     */
+    public void flush() {
+        if (pending.isEmpty()) {
+            return;         //반영할 게 없으면 락을 잡지 않는다. (update 를 막지 않는다)
+        }
+        synchronized (flushMonitor) {       //flush 는 한번에 하나만
+            Map<String, Pending> snapshot;
+            long closedSegment;
+            snapshotLock.writeLock().lock();
+            try {
+                if (pending.isEmpty()) {
+                    return;
+                }
+                closedSegment = wal.rotate();
+                snapshot = new HashMap<>(pending);
+            } finally {
+                snapshotLock.writeLock().unlock();
+            }
+
+            txTemplate.executeWithoutResult(status -> write(snapshot));
+
+            //반영하는 사이에 새 값이 들어온 회원은 남겨둔다. (새 값은 다음 세그먼트에 있다)
+            for (Map.Entry<String, Pending> entry : snapshot.entrySet()) {
+                pending.remove(entry.getKey(), entry.getValue());
+            }
+            wal.deleteUpTo(closedSegment);
+            flushes.increment();
+            flushedRows.add(snapshot.size());
+            log.debug("write-behind flush rows={} segment={}", snapshot.size(), closedSegment);
+        }
+    }
+
+    /**
+     * 이 회원들의 pending 만 호출한 쪽 트랜잭션 안에서 반영한다. pending 에서는 커밋된 뒤에 뺀다.
+     */
+    private void flushOwn(Collection<String> memberIds) {
+        if (pending.isEmpty()) {
+            return;
+        }
+        Map<String, Pending> own = new HashMap<>();
+        for (String memberId : memberIds) {
+            Pending value = pending.get(memberId);
+            if (value != null) {
+                own.put(memberId, value);
+            }
+        }
+        if (own.isEmpty()) {
+            return;
+        }
+
+        callerTxTemplate.executeWithoutResult(status -> {
+            write(own);
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    for (Map.Entry<String, Pending> entry : own.entrySet()) {
+                        pending.remove(entry.getKey(), entry.getValue());
+                    }
+                }
+            });
+        });
+    }
+
+    private void flushOwn(String memberId) {
+        flushOwn(Collections.singletonList(memberId));
+    }
+
+    private static List<String> memberIds(Collection<Member> members) {
+        return members.stream().map(Member::getMemberId).collect(Collectors.toList());
+    }
+
+    /**
+     * 진행 중인 트랜잭션 안에서 불러야 한다. (커넥션 하나로 반영)
+     */
+    private void write(Map<String, Pending> values) {
+        for (Map.Entry<String, Pending> entry : values.entrySet()) {
+            String memberId = entry.getKey();
+            Pending value = entry.getValue();
+            if (claim(memberId, value.lsn)) {
+                super.update(memberId, value.money);
+            } else {
+                log.debug("이미 더 최신 값이 반영됨, 건너뜀 memberId={} lsn={}", memberId, value.lsn);
+            }
+        }
+    }
+
+    /**
+     * 이 회원에 반영한 lsn 을 올린다. 이미 같거나 더 큰 lsn 이 반영돼 있으면 false
+     * member_write_behind 로우 락이 같은 회원을 반영하는 트랜잭션끼리 줄을 세운다.
+     */
+    private boolean claim(String memberId, long lsn) {
+        if (template.update("update member_write_behind set lsn = ? where member_id = ? and lsn < ?", lsn, memberId, lsn) == 1) {
+            return true;
+        }
+        //처음 반영하는 회원. 이미 있으면 0건 (위에서 걸러진 경우)
+        return template.update("insert into member_write_behind(member_id, lsn) select ?, ?"
+                + " where not exists (select 1 from member_write_behind where member_id = ?)", memberId, lsn, memberId) == 1;
+    }
+
+    private void recover(Path walDir) {
+        Map<String, Pending> replayed = new HashMap<>();
+        //뒤에 나온 값이 앞의 값을 덮는다.
+        long last = WriteAheadLog.replay(walDir, (memberId, money, lsn) -> replayed.put(memberId, new Pending(money, lsn)));
+        if (replayed.isEmpty()) {
+            return;
+        }
+        log.info("write-behind 복구 rows={} segments<={}", replayed.size(), last);
+        txTemplate.executeWithoutResult(status -> write(replayed));
+        WriteAheadLog.deleteSegments(walDir, last);
+    }
+
+    private void syncQuietly() {
+        try {
+            wal.sync();
+        } catch (RuntimeException e) {
+            log.error("WAL fsync 실패", e);
+        }
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (RuntimeException e) {
+            log.error("write-behind flush 실패, 다음 주기에 다시 시도 pending={}", pending.size(), e);
+        }
+    }
+
+    @Override
+    public Member findById(String memberId) {
+        Member member = super.findById(memberId);
+        Pending value = pending.get(memberId);
+        if (value != null) {
+            member.setMoney(value.money);
+        }
+        return member;
+    }
+
+    @Override
+    public Optional<Member> findOptional(String memberId) {
+        Optional<Member> member = super.findOptional(memberId);
+        Pending value = pending.get(memberId);
+        if (value != null) {
+            member.ifPresent(m -> m.setMoney(value.money));
+        }
+        return member;
+    }
+
+    @Override
+    public Map<String, Member> findAllById(Collection<String> memberIds) {
+        Map<String, Member> result = super.findAllById(memberIds);
+        for (Member member : result.values()) {
+            Pending value = pending.get(member.getMemberId());
+            if (value != null) {
+                member.setMoney(value.money);
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public MemberPage findPage(String afterMemberId, int limit) {
+        return overlay(super.findPage(afterMemberId, limit));
+    }
+
+    @Override
+    public MemberPage findPageBefore(String beforeMemberId, int limit) {
+        return overlay(super.findPageBefore(beforeMemberId, limit));
+    }
+
+    private MemberPage overlay(MemberPage page) {
+        for (Member member : page.getMembers()) {
+            Pending value = pending.get(member.getMemberId());
+            if (value != null) {
+                member.setMoney(value.money);
+            }
+        }
+        return page;
+    }
+
+    //아래는 그 회원의 pending 을 호출한 쪽 트랜잭션에서 먼저 반영하고 target 으로 보낸다.
+
+    @Override
+    public Member save(Member member) {
+        flushOwn(member.getMemberId());
+        return super.save(member);
+    }
+
+    @Override
+    public List<Member> saveAll(Collection<Member> members, int batchSize) {
+        flushOwn(memberIds(members));
+        return super.saveAll(members, batchSize);
+    }
+
+    @Override
+    public SaveResult trySave(Member member) {
+        flushOwn(member.getMemberId());
+        return super.trySave(member);
+    }
+
+    @Override
+    public Member upsert(Member member) {
+        flushOwn(member.getMemberId());
+        return super.upsert(member);
+    }
+
+    @Override
+    public List<Member> upsertAll(Collection<Member> members, int batchSize) {
+        flushOwn(memberIds(members));
+        return super.upsertAll(members, batchSize);
+    }
+
+    @Override
+    public Member findByIdForUpdate(String memberId) {
+        flushOwn(memberId);
+        return super.findByIdForUpdate(memberId);
+    }
+
+    @Override
+    public Member findByIdWithVersion(String memberId) {
+        flushOwn(memberId);
+        return super.findByIdWithVersion(memberId);
+    }
+
+    @Override
+    public void updateWithVersion(String memberId, int money, long version) {
+        flushOwn(memberId);
+        super.updateWithVersion(memberId, money, version);
+    }
+
+    @Override
+    public boolean debit(String memberId, int amount) {
+        flushOwn(memberId);
+        return super.debit(memberId, amount);
+    }
+
+    @Override
+    public boolean credit(String memberId, int amount) {
+        flushOwn(memberId);
+        return super.credit(memberId, amount);
+    }
+
+    @Override
+    public int[] debitAll(List<Transfer> transfers) {
+        flushOwn(transfers.stream().map(Transfer::getFromId).collect(Collectors.toList()));
+        return super.debitAll(transfers);
+    }
+
+    @Override
+    public int[] creditAll(List<Transfer> transfers) {
+        flushOwn(transfers.stream().map(Transfer::getToId).collect(Collectors.toList()));
+        return super.creditAll(transfers);
+    }
+
+    @Override
+    public void delete(String memberId) {
+        flushOwn(memberId);
+        super.delete(memberId);
+    }
+
+    public int getPendingCount() {
+        return pending.size();
+    }
+
+    public long getUpdateCount() {
+        return updates.sum();
+    }
+
+    public long getFlushedRowCount() {
+        return flushedRows.sum();
+    }
+
+    public long getFlushCount() {
+        return flushes.sum();
+    }
+
+    private static final class Pending {
+        private final int money;
+        private final long lsn;
+
+        private Pending(int money, long lsn) {
+            this.money = money;
+            this.lsn = lsn;
+        }
+    }
+
+    /**
+     * 주기 작업을 멈추고 남은 pending 을 반영한 뒤 WAL 을 닫는다.
+     */
+    @Override
+    public void close() {
+        scheduler.shutdown();
+        try {
+            scheduler.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        try {
+            flush();
+        } finally {
+            wal.close();
+        }
+    }
+}
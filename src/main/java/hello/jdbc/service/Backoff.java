@@ -0,0 +1,40 @@
+package hello.jdbc.service;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 재시도 사이 대기 - full jitter
+ * 0 ~ min(max, base * 2^(attempt-1)) 사이에서 무작위로 쉰다. 충돌한 스레드들이 같은 시각에 다시 부딪히지 않는다.
+ * TransientRetryTemplate, OptimisticTransferExecutor 가 같이 쓴다.
+ */
+final class Backoff {
+
+    private final long baseMillis;
+    private final long maxMillis;
+
+    Backoff(long baseMillis, long maxMillis) {
+        this.baseMillis = baseMillis;
+        this.maxMillis = maxMillis;
+    }
+
+    /**
+     * attempt 번째 실패 후 쉬는 시간의 상한
+     */
+    long cap(int attempt) {
+        return Math.min(maxMillis, baseMillis << Math.min(attempt - 1, 20));
+    }
+
+    void sleep(int attempt) {
+        long cap = cap(attempt);
+        if (cap <= 0) {
+            return;
+        }
+        try {
+            TimeUnit.MILLISECONDS.sleep(ThreadLocalRandom.current().nextLong(cap + 1));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("재시도 대기 중 인터럽트", e);
+        }
+    }
+}
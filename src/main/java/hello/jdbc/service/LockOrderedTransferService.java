@@ -0,0 +1,79 @@
+package hello.jdbc.service;
+
+import hello.jdbc.domain.Member;
+import hello.jdbc.repository.MemberRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+
+/**
+ * 비관적 락 이체 - 두 계좌를 select ... for update 로 잠그고 이체한다.
+ *
+ * bizLogic 처럼 락 없이 조회하면 A->B 와 B->A 가 동시에 들어올 때 갱신 손실이 생기고,
+ * 조회한 순서대로(fromId, toId) 락을 잡으면 서로 상대 락을 기다리는 데드락이 생긴다.
+ * 여기서는 항상 memberId 가 작은 쪽부터 잠근다. 모든 이체가 같은 순서로 락을 잡으니 대기는 있어도 순환 대기는 없다.
+ *
+ * 락 대기 시간은 H2 세션 설정 LOCK_TIMEOUT(lockTimeoutMillis)으로 제한한다.
+ * 트랜잭션 timeout 은 JDBC 쿼리 timeout 이 될 뿐이고, H2 의 로우 락 대기는 세션의 LOCK_TIMEOUT 만 본다.
+ * 그래서 트랜잭션 커넥션에 SET LOCK_TIMEOUT 을 걸고, 끝나면 원래 값으로 되돌린다. (풀로 돌아가는 커넥션이라)
+ * 시간 안에 락을 못잡으면 CannotAcquireLockException 으로 끝나고 롤백된다.
+ */
+@Slf4j
+public class LockOrderedTransferService {
+
+    private final MemberRepository memberRepository;
+    private final TransactionTemplate txTemplate;
+    private final JdbcTemplate sessionTemplate;
+    private final long lockTimeoutMillis;
+
+    /**
+     * @param dataSource transactionManager 와 같은 DataSource. 트랜잭션 커넥션에 LOCK_TIMEOUT 을 건다.
+     */
+    public LockOrderedTransferService(MemberRepository memberRepository, DataSource dataSource,
+                                      PlatformTransactionManager transactionManager, long lockTimeoutMillis) {
+        if (lockTimeoutMillis < 0) {
+            throw new IllegalArgumentException("lockTimeoutMillis 는 0 이상이어야 한다. lockTimeoutMillis=" + lockTimeoutMillis);
+        }
+        this.memberRepository = memberRepository;
+        this.txTemplate = new TransactionTemplate(transactionManager);
+        //JdbcTemplate 은 DataSourceUtils 로 커넥션을 얻으니 트랜잭션 안에서는 트랜잭션 커넥션을 쓴다.
+        this.sessionTemplate = new JdbcTemplate(dataSource);
+        this.lockTimeoutMillis = lockTimeoutMillis;
+    }
+
+    public void accountTransfer(String fromId, String toId, int money) {
+        TransferValidator.validateRequest(fromId, toId, money);
+
+        txTemplate.executeWithoutResult(status -> {
+            Integer previous = sessionTemplate.queryForObject("select lock_timeout()", Integer.class);
+            sessionTemplate.execute("set lock_timeout " + lockTimeoutMillis);
+            try {
+                bizLogic(fromId, toId, money);
+            } finally {
+                //세션 설정이라 롤백으로 안 돌아온다. 커밋/롤백 전에 직접 되돌린다.
+                sessionTemplate.execute("set lock_timeout " + previous);
+            }
+        });
+    }
+
+    private void bizLogic(String fromId, String toId, int money) {
+        //memberId 순서로 잠근다. (fromId / toId 순서가 아니다)
+        boolean fromFirst = fromId.compareTo(toId) < 0;
+        Member first = memberRepository.findByIdForUpdate(fromFirst ? fromId : toId);
+        Member second = memberRepository.findByIdForUpdate(fromFirst ? toId : fromId);
+        Member fromMember = fromFirst ? first : second;
+        Member toMember = fromFirst ? second : first;
+
+        if (fromMember.getMoney() < money) {
+            throw new IllegalStateException("잔액 부족 fromId=" + fromId + " money=" + fromMember.getMoney());
+        }
+
+        //두 로우 모두 락을 잡고 있으니 읽은 값으로 계산해서 써도 덮어쓸 일이 없다.
+        memberRepository.update(fromId, fromMember.getMoney() - money);
+        TransferValidator.validateTarget(toId);
+        memberRepository.update(toId, toMember.getMoney() + money);
+    }
+}
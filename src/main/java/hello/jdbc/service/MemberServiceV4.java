@@ -8,6 +8,7 @@ import lombok.extern.slf4j.Slf4j;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.sql.SQLException;
+import java.util.NoSuchElementException;
 
 /**
  * 예외 누수 문제 해결
@@ -37,6 +38,26 @@ public class MemberServiceV4 {
         bizLogic(fromId, toId, money);
     }
 
+    /**
+     * 조회 없이 상대값 update 두번으로 이체한다.
+     * 기존 accountTransfer 는 select 2번 + 자바에서 계산한 절대값 update 2번이라 4번 왕복이고,
+     * 동시에 같은 계좌로 이체가 오면 나중에 쓴 값이 앞의 값을 덮어쓴다. (갱신 손실)
+     * 여기는 debit / credit 2번 왕복이고 DB가 한 문장 안에서 잔액을 확인하고 바꾼다.
+     */
+    @Transactional
+    public void accountTransferAtomic(String fromId, String toId, int money) {
+        TransferValidator.validateRequest(fromId, toId, money);
+
+        if (!memberRepository.debit(fromId, money)) {       // 1번 업데이트
+            throw new IllegalStateException("출금 실패, 회원이 없거나 잔액 부족 fromId=" + fromId);
+        }
+        TransferValidator.validateTarget(toId);           //검증에 실패하면 예외 -> 롤백, 1번 업데이트도 취소된다.
+
+        if (!memberRepository.credit(toId, money)) {        // 2번 업데이트
+            throw new NoSuchElementException("member not found memberId=" + toId);
+        }
+    }
+
     private void bizLogic(String fromId, String toId, int money)   {
         Member fromMember = memberRepository.findById(fromId);
         Member toMember = memberRepository.findById(toId);
@@ -44,14 +65,8 @@ public class MemberServiceV4 {
         //계좌이체니까 일단 내돈을 깎아야지  from의 돈을 깎고 to의 돈을 올리는것
         memberRepository.update(fromId, fromMember.getMoney() - money);     // 1번 업데이트
         //중간에 오류케이스도 한번 만들어봤다.
-        validation(toMember);           //1번 업데이트 후 검증에 문제 생기면 2번으로 못 넘어감.
+        TransferValidator.validateTarget(toMember.getMemberId());           //1번 업데이트 후 검증에 문제 생기면 2번으로 못 넘어감.
 
         memberRepository.update(toId, toMember.getMoney() + money);     // 2번 업데이트
     }
-
-    private static void validation(Member toMember) {
-        if (toMember.getMemberId().equals("ex")) {
-            throw new IllegalStateException("이체중 예외가 발생");
-        }
-    }
 }
@@ -0,0 +1,77 @@
+package hello.jdbc.service;
+
+import hello.jdbc.domain.Member;
+import hello.jdbc.repository.MemberRepository;
+import hello.jdbc.repository.ex.MyOptimisticLockException;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * 낙관적 락 이체 - 락 없이 version 과 같이 읽고, 쓸 때 version 이 그대로인지 확인한다.
+ * 충돌이 드문 계좌는 락 대기가 없어서 비관적 락보다 빠르다.
+ *
+ * 충돌(MyOptimisticLockException)이 나면 트랜잭션을 롤백하고 처음부터 다시 읽어서 재시도한다. 최대 maxAttempts 번.
+ * 재시도 사이에는 backoff 를 두는데, 충돌한 스레드들이 같은 시각에 다시 부딪히지 않도록 0 ~ 상한 사이에서 무작위로 쉰다. (full jitter)
+ * 상한은 baseBackoffMillis 에서 시작해서 재시도마다 2배, maxBackoffMillis 까지.
+ */
+@Slf4j
+public class OptimisticTransferExecutor {
+
+    private final MemberRepository memberRepository;
+    private final TransactionTemplate txTemplate;
+    private final int maxAttempts;
+    private final Backoff backoff;
+
+    private final RetryMetrics metrics = new RetryMetrics();
+
+    public OptimisticTransferExecutor(MemberRepository memberRepository, PlatformTransactionManager transactionManager,
+                                      int maxAttempts, long baseBackoffMillis, long maxBackoffMillis) {
+        if (maxAttempts < 1) {
+            throw new IllegalArgumentException("maxAttempts 는 1 이상이어야 한다. maxAttempts=" + maxAttempts);
+        }
+        this.memberRepository = memberRepository;
+        this.txTemplate = new TransactionTemplate(transactionManager);
+        this.maxAttempts = maxAttempts;
+        this.backoff = new Backoff(baseBackoffMillis, maxBackoffMillis);
+    }
+
+    public void accountTransfer(String fromId, String toId, int money) {
+        TransferValidator.validateRequest(fromId, toId, money);
+
+        metrics.call();
+        for (int attempt = 1; ; attempt++) {
+            metrics.attempt();
+            try {
+                txTemplate.executeWithoutResult(status -> bizLogic(fromId, toId, money));
+                return;
+            } catch (MyOptimisticLockException e) {
+                metrics.conflict();
+                if (attempt >= maxAttempts) {
+                    metrics.exhausted();
+                    log.warn("낙관적 락 재시도 초과 fromId={} toId={} attempts={}", fromId, toId, attempt);
+                    throw e;
+                }
+                log.debug("낙관적 락 충돌, 재시도 attempt={} {}", attempt, e.getMessage());
+                backoff.sleep(attempt);
+            }
+        }
+    }
+
+    private void bizLogic(String fromId, String toId, int money) {
+        Member fromMember = memberRepository.findByIdWithVersion(fromId);
+        Member toMember = memberRepository.findByIdWithVersion(toId);
+
+        if (fromMember.getMoney() < money) {
+            throw new IllegalStateException("잔액 부족 fromId=" + fromId + " money=" + fromMember.getMoney());
+        }
+
+        memberRepository.updateWithVersion(fromId, fromMember.getMoney() - money, fromMember.getVersion());
+        TransferValidator.validateTarget(toId);
+        memberRepository.updateWithVersion(toId, toMember.getMoney() + money, toMember.getVersion());
+    }
+
+    public RetryMetrics getMetrics() {
+        return metrics;
+    }
+}
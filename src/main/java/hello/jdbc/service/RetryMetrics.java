@@ -0,0 +1,75 @@
+package hello.jdbc.service;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 재시도 통계. 여러 스레드에서 동시에 올리기 때문에 LongAdder 를 쓴다. (AtomicLong 보다 경합이 적다)
+ * conflictRate 가 높으면 그 워크로드는 비관적 락(LockOrderedTransferService)이 낫다.
+ */
+public class RetryMetrics {
+
+    private final LongAdder calls = new LongAdder();        //호출 수
+    private final LongAdder attempts = new LongAdder();     //실제 시도 수 (첫 시도 + 재시도)
+    private final LongAdder conflicts = new LongAdder();    //재시도 대상 실패 수
+    private final LongAdder exhausted = new LongAdder();    //재시도를 다 쓰고 실패한 호출 수
+    private final LongAdder throttled = new LongAdder();    //재시도 예산이 없어서 재시도하지 않은 호출 수
+
+    void call() {
+        calls.increment();
+    }
+
+    void attempt() {
+        attempts.increment();
+    }
+
+    void conflict() {
+        conflicts.increment();
+    }
+
+    void exhausted() {
+        exhausted.increment();
+    }
+
+    void throttled() {
+        throttled.increment();
+    }
+
+    public long getCalls() {
+        return calls.sum();
+    }
+
+    public long getAttempts() {
+        return attempts.sum();
+    }
+
+    public long getConflicts() {
+        return conflicts.sum();
+    }
+
+    public long getRetries() {
+        return attempts.sum() - calls.sum();
+    }
+
+    public long getExhausted() {
+        return exhausted.sum();
+    }
+
+    public long getThrottled() {
+        return throttled.sum();
+    }
+
+    /**
+     * 시도 대비 충돌 비율 (0.0 ~ 1.0)
+     */
+    public double getConflictRate() {
+        long attempts = getAttempts();
+        return attempts == 0 ? 0.0 : (double) getConflicts() / attempts;
+    }
+
+    @Override
+    public String toString() {
+        return "RetryMetrics(calls=" + getCalls() + ", attempts=" + getAttempts() + ", conflicts=" + getConflicts()
+                + ", retries=" + getRetries() + ", exhausted=" + getExhausted() + ", throttled=" + getThrottled()
+                + ", conflictRate=" + String.format("%.3f", getConflictRate()) + ")";
+    }
+}
@@ -0,0 +1,26 @@
+package hello.jdbc.service;
+
+/**
+ * MemberServiceV4 이체에 일시적 DB 예외 재시도를 붙인다.
+ *
+ * memberService 는 @Transactional 프록시여야 한다. 재시도 한번 = accountTransfer 호출 한번 = 새 트랜잭션 하나.
+ * 그래서 이 클래스 자체에는 @Transactional 을 붙이지 않는다. 붙이면 재시도가 같은 트랜잭션 안에서 돌게 된다.
+ */
+public class RetryingMemberService {
+
+    private final MemberServiceV4 memberService;
+    private final TransientRetryTemplate retryTemplate;
+
+    public RetryingMemberService(MemberServiceV4 memberService, TransientRetryTemplate retryTemplate) {
+        this.memberService = memberService;
+        this.retryTemplate = retryTemplate;
+    }
+
+    public void accountTransfer(String fromId, String toId, int money) {
+        retryTemplate.run(() -> memberService.accountTransfer(fromId, toId, money));
+    }
+
+    public void accountTransferAtomic(String fromId, String toId, int money) {
+        retryTemplate.run(() -> memberService.accountTransferAtomic(fromId, toId, money));
+    }
+}
@@ -0,0 +1,121 @@
+package hello.jdbc.service;
+
+import hello.jdbc.domain.Transfer;
+import hello.jdbc.domain.TransferResult;
+import hello.jdbc.repository.MemberRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DataAccessException;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionException;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 이체 배치 - 여러 건의 이체를 트랜잭션 하나로 처리한다. (또는 chunkSize 건마다 한번 커밋)
+ * 건마다 트랜잭션 시작 / 커넥션 획득 / 커밋을 하던 비용을 배치 전체가 나눠서 낸다.
+ *
+ * 1. 검증에 걸린 건은 실행하지 않고 실패로 기록한다.
+ * 2. 나머지 건의 출금을 JDBC 배치 하나로 보낸다. (잔액 부족이면 0건 반영 -> 실패)
+ * 3. 출금이 반영된 건의 입금을 JDBC 배치 하나로 보낸다. (받는 회원이 없으면 출금을 되돌리고 실패)
+ * 출금이 먼저 다 반영되기 때문에 같은 배치 안에서 입금받은 돈으로 다시 출금할 수는 없다.
+ */
+@Slf4j
+public class TransferBatchService {
+
+    private final MemberRepository memberRepository;
+    private final TransactionTemplate txTemplate;
+
+    public TransferBatchService(MemberRepository memberRepository, PlatformTransactionManager transactionManager) {
+        this.memberRepository = memberRepository;
+        this.txTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    /**
+     * 전체를 트랜잭션 하나로 처리한다.
+     */
+    public List<TransferResult> accountTransferBatch(List<Transfer> transfers) {
+        return accountTransferBatch(transfers, transfers.size());
+    }
+
+    /**
+     * chunkSize 건마다 트랜잭션을 나눠서 커밋한다.
+     * 중간 청크에서 DB 예외가 나면 그 청크만 롤백되고 앞에서 커밋된 청크는 그대로다.
+     * 롤백된 청크의 건은 "청크 롤백: ..." 실패로 기록하고 다음 청크를 계속 처리한다.
+     * 그래서 예외로 끝나지 않고 항상 건별 결과가 돌아온다. (어느 건이 이미 반영됐는지 호출한 쪽이 알 수 있다)
+     */
+    public List<TransferResult> accountTransferBatch(List<Transfer> transfers, int chunkSize) {
+        if (chunkSize <= 0 && !transfers.isEmpty()) {
+            throw new IllegalArgumentException("chunkSize 는 1 이상이어야 한다. chunkSize=" + chunkSize);
+        }
+
+        List<TransferResult> results = new ArrayList<>(transfers.size());
+        int from = 0;
+        while (from < transfers.size()) {
+            List<Transfer> chunk = transfers.subList(from, from + Math.min(chunkSize, transfers.size() - from));
+            try {
+                results.addAll(txTemplate.execute(status -> transferChunk(chunk)));      //청크 하나 = 트랜잭션 하나
+            } catch (DataAccessException | TransactionException e) {
+                log.warn("transfer batch chunk 롤백 from={} size={}", from, chunk.size(), e);
+                for (Transfer transfer : chunk) {
+                    results.add(TransferResult.fail(transfer, "청크 롤백: " + e.getMessage()));
+                }
+            }
+            from += chunk.size();
+        }
+        return results;
+    }
+
+    private List<TransferResult> transferChunk(List<Transfer> chunk) {
+        TransferResult[] results = new TransferResult[chunk.size()];
+
+        //1. 검증
+        List<Transfer> valid = new ArrayList<>();
+        List<Integer> validIndex = new ArrayList<>();
+        for (int i = 0; i < chunk.size(); i++) {
+            Transfer transfer = chunk.get(i);
+            String failReason = TransferValidator.failReason(transfer);
+            if (failReason != null) {
+                results[i] = TransferResult.fail(transfer, failReason);
+            } else {
+                valid.add(transfer);
+                validIndex.add(i);
+            }
+        }
+
+        //2. 출금
+        int[] debited = valid.isEmpty() ? new int[0] : memberRepository.debitAll(valid);
+        List<Transfer> debitedTransfers = new ArrayList<>();
+        List<Integer> debitedIndex = new ArrayList<>();
+        for (int i = 0; i < valid.size(); i++) {
+            if (debited[i] == 1) {
+                debitedTransfers.add(valid.get(i));
+                debitedIndex.add(validIndex.get(i));
+            } else {
+                results[validIndex.get(i)] = TransferResult.fail(valid.get(i), "출금 실패, 회원이 없거나 잔액 부족");
+            }
+        }
+
+        //3. 입금
+        int[] credited = debitedTransfers.isEmpty() ? new int[0] : memberRepository.creditAll(debitedTransfers);
+        List<Transfer> refunds = new ArrayList<>();
+        for (int i = 0; i < debitedTransfers.size(); i++) {
+            Transfer transfer = debitedTransfers.get(i);
+            if (credited[i] == 1) {
+                results[debitedIndex.get(i)] = TransferResult.success(transfer);
+            } else {
+                //받는 회원이 없다. 같은 트랜잭션 안에서 출금한 만큼 다시 넣어준다.
+                refunds.add(new Transfer(transfer.getToId(), transfer.getFromId(), transfer.getMoney()));
+                results[debitedIndex.get(i)] = TransferResult.fail(transfer, "입금 실패, 받는 회원이 없음");
+            }
+        }
+        if (!refunds.isEmpty()) {
+            memberRepository.creditAll(refunds);
+        }
+
+        log.info("transfer batch size={} success={}", chunk.size(), debitedTransfers.size() - refunds.size());
+        return Arrays.asList(results);
+    }
+}
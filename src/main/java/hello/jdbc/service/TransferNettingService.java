@@ -0,0 +1,111 @@
+package hello.jdbc.service;
+
+import hello.jdbc.domain.Member;
+import hello.jdbc.domain.Transfer;
+import hello.jdbc.domain.TransferResult;
+import hello.jdbc.repository.MemberRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 이체 상계(netting) - 모아둔 이체들을 계좌별 순증감으로 합쳐서 계좌마다 update 한번만 한다.
+ * 같은 계좌가 여러번 나오는 정산에서는 update 횟수가 이체 건수 -> 계좌 수로 줄어든다.
+ *
+ * 1. 관련된 계좌 잔액을 findAllById 로 한번에 읽는다.
+ * 2. 이체를 순서대로 메모리에서 적용해 보면서 건별로 성공 / 실패(잔액 부족 등)를 정한다.
+ * 3. 성공한 이체만 계좌별 순증감으로 합쳐서, memberId 순서로 debit / credit 한번씩 한다.
+ * 전부 트랜잭션 하나다. 읽은 뒤에 다른 트랜잭션이 잔액을 줄여서 debit 조건(money >= ?)에 걸리면 전체를 롤백한다.
+ */
+@Slf4j
+public class TransferNettingService {
+
+    private final MemberRepository memberRepository;
+    private final TransactionTemplate txTemplate;
+
+    public TransferNettingService(MemberRepository memberRepository, PlatformTransactionManager transactionManager) {
+        this.memberRepository = memberRepository;
+        this.txTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    public List<TransferResult> settle(List<Transfer> window) {
+        return txTemplate.execute(status -> doSettle(window));
+    }
+
+    private List<TransferResult> doSettle(List<Transfer> window) {
+        TransferResult[] results = new TransferResult[window.size()];
+
+        //memberId 를 0, 1, 2 ... 슬롯 번호로 바꾸고 잔액 / 증감은 long 배열에 둔다. (Integer 박싱 없이 누적)
+        Set<String> memberIds = new LinkedHashSet<>();
+        for (Transfer transfer : window) {
+            memberIds.add(transfer.getFromId());
+            memberIds.add(transfer.getToId());
+        }
+        Map<String, Member> members = memberRepository.findAllById(memberIds);
+
+        Map<String, Integer> slots = new HashMap<>();
+        List<String> slotIds = new ArrayList<>();
+        for (String memberId : members.keySet()) {
+            slots.put(memberId, slotIds.size());
+            slotIds.add(memberId);
+        }
+        long[] balance = new long[slotIds.size()];
+        long[] delta = new long[slotIds.size()];
+        for (int slot = 0; slot < slotIds.size(); slot++) {
+            balance[slot] = members.get(slotIds.get(slot)).getMoney();
+        }
+
+        //이체를 순서대로 메모리에서 적용해 본다.
+        for (int i = 0; i < window.size(); i++) {
+            Transfer transfer = window.get(i);
+            String failReason = TransferValidator.failReason(transfer);
+            Integer from = slots.get(transfer.getFromId());
+            Integer to = slots.get(transfer.getToId());
+            if (failReason == null && (from == null || to == null)) {
+                failReason = "회원이 없음";
+            }
+            if (failReason == null && balance[from] < transfer.getMoney()) {
+                failReason = "잔액 부족";
+            }
+            if (failReason != null) {
+                results[i] = TransferResult.fail(transfer, failReason);
+                continue;
+            }
+            balance[from] -= transfer.getMoney();
+            balance[to] += transfer.getMoney();
+            delta[from] -= transfer.getMoney();
+            delta[to] += transfer.getMoney();
+            results[i] = TransferResult.success(transfer);
+        }
+
+        //계좌마다 한번씩 쓴다. memberId 순서로 쓰면 다른 정산과 락을 잡는 순서가 같아서 데드락이 안난다.
+        List<String> touched = new ArrayList<>();
+        for (int slot = 0; slot < slotIds.size(); slot++) {
+            if (delta[slot] != 0) {
+                touched.add(slotIds.get(slot));
+            }
+        }
+        touched.sort(null);
+        for (String memberId : touched) {
+            long net = delta[slots.get(memberId)];
+            if (net < 0) {
+                if (!memberRepository.debit(memberId, Math.toIntExact(-net))) {
+                    throw new IllegalStateException("상계 출금 실패, 그 사이 잔액이 바뀜 memberId=" + memberId);
+                }
+            } else if (!memberRepository.credit(memberId, Math.toIntExact(net))) {
+                throw new IllegalStateException("상계 입금 실패, 그 사이 회원이 삭제됨 memberId=" + memberId);
+            }
+        }
+
+        log.info("netting transfers={} updates={}", window.size(), touched.size());
+        return Arrays.asList(results);
+    }
+}
@@ -0,0 +1,109 @@
+package hello.jdbc.service;
+
+import hello.jdbc.domain.Transfer;
+import hello.jdbc.domain.TransferResult;
+import hello.jdbc.repository.MemberRepository;
+import hello.jdbc.support.GroupCollector;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * 그룹 커밋 이체 큐
+ * 여러 스레드에서 들어온 이체를 모아서 트랜잭션 하나로 커밋한다. 커밋(fsync) 비용을 여러 건이 나눠서 낸다.
+ * maxBatchSize 건이 모이거나, 첫 건이 들어오고 maxDelayMicros 가 지나면 바로 보낸다. (지연 상한, GroupCollector)
+ *
+ * 건마다 세이브포인트를 잡아서, 실패한 건만 세이브포인트로 되돌리고 나머지는 같이 커밋한다.
+ * 결과는 submit 이 돌려준 CompletableFuture 로 받는다. 커밋 자체가 실패하면 그 묶음 전부 예외로 끝난다.
+ */
+@Slf4j
+public class TransferQueue implements AutoCloseable {
+
+    private final MemberRepository memberRepository;
+    private final TransactionTemplate txTemplate;
+
+    private final GroupCollector<Request> collector;
+
+    public TransferQueue(MemberRepository memberRepository, PlatformTransactionManager transactionManager,
+                         int maxBatchSize, long maxDelayMicros) {
+        this.memberRepository = memberRepository;
+        this.txTemplate = new TransactionTemplate(transactionManager);
+        this.collector = new GroupCollector<>("transfer-queue", maxBatchSize, maxDelayMicros,
+                this::flush, (request, e) -> request.future.completeExceptionally(e));
+    }
+
+    /**
+     * 종료된 뒤에는 IllegalStateException. 받은 요청은 처리되거나 예외로 끝나거나 둘 중 하나다.
+     */
+    public CompletableFuture<TransferResult> submit(Transfer transfer) {
+        Request request = new Request(transfer);
+        collector.submit(request);
+        return request.future;
+    }
+
+    private void flush(List<Request> batch) {
+        List<TransferResult> results = new ArrayList<>(batch.size());
+        try {
+            txTemplate.executeWithoutResult(status -> {
+                for (Request request : batch) {
+                    Object savepoint = status.createSavepoint();
+                    try {
+                        transfer(request.transfer);
+                        results.add(TransferResult.success(request.transfer));
+                    } catch (RuntimeException e) {
+                        //이 건만 되돌린다. 트랜잭션은 계속 진행.
+                        status.rollbackToSavepoint(savepoint);
+                        results.add(TransferResult.fail(request.transfer, e.getMessage()));
+                    }
+                    status.releaseSavepoint(savepoint);
+                }
+            });
+        } catch (RuntimeException e) {
+            log.error("group commit 실패 size={}", batch.size(), e);
+            for (Request request : batch) {
+                request.future.completeExceptionally(e);
+            }
+            return;
+        }
+
+        //커밋이 끝난 다음에 결과를 알려준다.
+        for (int i = 0; i < batch.size(); i++) {
+            batch.get(i).future.complete(results.get(i));
+        }
+    }
+
+    /**
+     * MemberServiceV4.accountTransferAtomic 과 같은 로직
+     */
+    private void transfer(Transfer transfer) {
+        TransferValidator.validateRequest(transfer.getFromId(), transfer.getToId(), transfer.getMoney());
+        if (!memberRepository.debit(transfer.getFromId(), transfer.getMoney())) {
+            throw new IllegalStateException("출금 실패, 회원이 없거나 잔액 부족 fromId=" + transfer.getFromId());
+        }
+        TransferValidator.validateTarget(transfer.getToId());
+        if (!memberRepository.credit(transfer.getToId(), transfer.getMoney())) {
+            throw new IllegalStateException("입금 실패, 받는 회원이 없음 toId=" + transfer.getToId());
+        }
+    }
+
+    /**
+     * 남은 요청까지 처리하고 종료한다. 10초 안에 못 끝낸 요청은 예외로 끝난다.
+     */
+    @Override
+    public void close() throws InterruptedException {
+        collector.close();
+    }
+
+    private static class Request {
+        private final Transfer transfer;
+        private final CompletableFuture<TransferResult> future = new CompletableFuture<>();
+
+        private Request(Transfer transfer) {
+            this.transfer = transfer;
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package hello.jdbc.service;
+
+import hello.jdbc.domain.Transfer;
+
+/**
+ * 이체 검증 공통 - 금액, 같은 계좌, 이체중 예외("ex")
+ * MemberServiceV4, LockOrderedTransferService, OptimisticTransferExecutor, TransferQueue,
+ * TransferBatchService, TransferNettingService 가 같이 쓴다.
+ */
+final class TransferValidator {
+
+    static final String INVALID_MONEY = "이체 금액은 0보다 커야 한다.";
+    static final String SAME_ACCOUNT = "같은 계좌로는 이체할 수 없다.";
+    static final String TRANSFER_EX = "이체중 예외가 발생";
+
+    private TransferValidator() {
+    }
+
+    /**
+     * 이체 시작 전 검증. 잘못된 요청이면 IllegalArgumentException
+     */
+    static void validateRequest(String fromId, String toId, int money) {
+        if (money <= 0) {
+            throw new IllegalArgumentException(INVALID_MONEY + " money=" + money);
+        }
+        if (fromId.equals(toId)) {
+            throw new IllegalArgumentException(SAME_ACCOUNT + " memberId=" + fromId);
+        }
+    }
+
+    /**
+     * 1번 업데이트 후 검증. 예외 -> 롤백, 1번 업데이트도 취소된다.
+     */
+    static void validateTarget(String toId) {
+        if (toId.equals("ex")) {
+            throw new IllegalStateException(TRANSFER_EX);
+        }
+    }
+
+    /**
+     * 배치용. 예외 대신 실패 이유를 돌려준다. 통과하면 null
+     */
+    static String failReason(Transfer transfer) {
+        if (transfer.getMoney() <= 0) {
+            return INVALID_MONEY;
+        }
+        if (transfer.getFromId().equals(transfer.getToId())) {
+            return SAME_ACCOUNT;
+        }
+        if (transfer.getToId().equals("ex")) {
+            return TRANSFER_EX;
+        }
+        return null;
+    }
+}
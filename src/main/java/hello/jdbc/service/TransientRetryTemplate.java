@@ -0,0 +1,121 @@
+package hello.jdbc.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.RecoverableDataAccessException;
+import org.springframework.dao.TransientDataAccessException;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * 일시적인 DB 예외를 재시도하는 템플릿. (TransactionTemplate 처럼 콜백을 받는다)
+ *
+ * 리포지토리가 SQLExceptionTranslator 로 변환한 스프링 예외를 보고 재시도할지 정한다.
+ * - TransientDataAccessException : 락 대기 timeout(CannotAcquireLockException), 데드락(DeadlockLoserDataAccessException),
+ *   쿼리 timeout 등. 같은 작업을 다시 하면 성공할 수 있다.
+ * - RecoverableDataAccessException : 커넥션을 새로 받는 등 복구 후 다시 하면 성공할 수 있다.
+ * 나머지(키 중복, 문법 오류, 비즈니스 예외 등)는 다시 해도 똑같이 실패하니 바로 던진다.
+ *
+ * 콜백 하나가 트랜잭션 하나여야 한다. 트랜잭션 전체를 처음부터 다시 해야 하기 때문이다.
+ * 이미 바깥 트랜잭션 안에서 호출되면 그 트랜잭션은 롤백만 가능한 상태라 재시도해도 소용없다. 이때는 한번만 실행한다.
+ *
+ * 재시도 예산(token bucket) - 재시도 한번에 토큰 1개를 쓰고, 성공 한번에 0.1개를 돌려받는다. (최대 retryBudget 개)
+ * DB가 전체적으로 느려져서 다들 실패하는 상황에 재시도가 부하를 몇 배로 키우지 않도록 막는다.
+ */
+@Slf4j
+public class TransientRetryTemplate {
+
+    private static final long TOKEN = 1000;                 //토큰 1개 = 1000 (정수로 0.1개 단위까지 다루려고)
+    private static final long SUCCESS_REFUND = TOKEN / 10;
+
+    private final int maxAttempts;
+    private final Backoff backoff;
+    private final long budgetCapacity;
+    private final AtomicLong budget;
+
+    private final RetryMetrics metrics = new RetryMetrics();
+
+    public TransientRetryTemplate(int maxAttempts, long baseBackoffMillis, long maxBackoffMillis, int retryBudget) {
+        if (maxAttempts < 1) {
+            throw new IllegalArgumentException("maxAttempts 는 1 이상이어야 한다. maxAttempts=" + maxAttempts);
+        }
+        this.maxAttempts = maxAttempts;
+        this.backoff = new Backoff(baseBackoffMillis, maxBackoffMillis);
+        this.budgetCapacity = retryBudget * TOKEN;
+        this.budget = new AtomicLong(budgetCapacity);
+    }
+
+    public <T> T execute(Supplier<T> action) {
+        metrics.call();
+        boolean retryable = !TransactionSynchronizationManager.isActualTransactionActive();
+        for (int attempt = 1; ; attempt++) {
+            metrics.attempt();
+            try {
+                T result = action.get();
+                refund();
+                return result;
+            } catch (RuntimeException e) {
+                if (!isTransient(e)) {
+                    throw e;
+                }
+                metrics.conflict();
+                if (!retryable) {
+                    throw e;
+                }
+                if (attempt >= maxAttempts) {
+                    metrics.exhausted();
+                    log.warn("재시도 초과 attempts={} ex={}", attempt, e.toString());
+                    throw e;
+                }
+                if (!tryAcquireRetry()) {
+                    metrics.throttled();
+                    log.warn("재시도 예산 소진, 재시도하지 않음 attempt={} ex={}", attempt, e.toString());
+                    throw e;
+                }
+                log.info("일시적 DB 예외, 재시도 attempt={} ex={}", attempt, e.getClass().getSimpleName());
+                backoff.sleep(attempt);
+            }
+        }
+    }
+
+    public void run(Runnable action) {
+        execute(() -> {
+            action.run();
+            return null;
+        });
+    }
+
+    public static boolean isTransient(Throwable e) {
+        return e instanceof TransientDataAccessException || e instanceof RecoverableDataAccessException;
+    }
+
+    private boolean tryAcquireRetry() {
+        while (true) {
+            long current = budget.get();
+            if (current < TOKEN) {
+                return false;
+            }
+            if (budget.compareAndSet(current, current - TOKEN)) {
+                return true;
+            }
+        }
+    }
+
+    private void refund() {
+        if (budget.get() < budgetCapacity) {
+            budget.accumulateAndGet(SUCCESS_REFUND, (current, refund) -> Math.min(budgetCapacity, current + refund));
+        }
+    }
+
+    /**
+     * 남은 재시도 예산 (토큰 개수)
+     */
+    public double getRemainingBudget() {
+        return (double) budget.get() / TOKEN;
+    }
+
+    public RetryMetrics getMetrics() {
+        return metrics;
+    }
+}
@@ -0,0 +1,161 @@
+package hello.jdbc.support;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+/**
+ * 요청 모으기 공통 - 여러 스레드가 넣은 요청을 스레드 하나가 묶어서 handler 로 넘긴다.
+ * maxBatchSize 개가 모이거나, 첫 요청이 들어오고 maxDelayMicros 가 지나면 바로 넘긴다. (지연 상한)
+ * TransferQueue, BatchingMemberLoader 가 같이 쓴다.
+ *
+ * 종료 후에 남은 요청은 하나도 빠짐없이 rejecter 로 끝낸다.
+ * - submit 은 읽기 락, close 는 쓰기 락. close 가 running 을 내린 뒤에는 큐에 들어오는 요청이 없다.
+ *   (락 없이 running 만 보면 running 확인 -> close -> 마지막 isEmpty 확인 -> add 순서로 요청이 큐에 남는다.)
+ * - close 가 기다리다 시간이 지나면 큐에 남은 요청을 직접 꺼내서 끝낸다.
+ */
+@Slf4j
+public class GroupCollector<T> implements AutoCloseable {
+
+    private static final long CLOSE_TIMEOUT_MILLIS = TimeUnit.SECONDS.toMillis(10);
+
+    private final String name;
+    private final int maxBatchSize;
+    private final long maxDelayNanos;
+    private final Consumer<List<T>> handler;
+    private final BiConsumer<T, RuntimeException> rejecter;
+
+    private final BlockingQueue<T> queue = new LinkedBlockingQueue<>();
+    private final ReadWriteLock stateLock = new ReentrantReadWriteLock();
+    private final Thread flusher;
+    private volatile boolean running = true;
+
+    /**
+     * @param handler  묶음 처리. 예외를 던지면 그 묶음의 요청을 전부 rejecter 로 끝낸다.
+     * @param rejecter 처리 못한 요청을 예외로 끝낸다. 이미 끝난 요청에 다시 불릴 수 있다. (CompletableFuture 면 무시됨)
+     */
+    public GroupCollector(String name, int maxBatchSize, long maxDelayMicros,
+                          Consumer<List<T>> handler, BiConsumer<T, RuntimeException> rejecter) {
+        if (maxBatchSize < 1) {
+            throw new IllegalArgumentException("maxBatchSize 는 1 이상이어야 한다. maxBatchSize=" + maxBatchSize);
+        }
+        this.name = name;
+        this.maxBatchSize = maxBatchSize;
+        this.maxDelayNanos = TimeUnit.MICROSECONDS.toNanos(maxDelayMicros);
+        this.handler = handler;
+        this.rejecter = rejecter;
+
+        this.flusher = new Thread(this::run, name);
+        this.flusher.setDaemon(true);
+        this.flusher.start();
+    }
+
+    public void submit(T request) {
+        stateLock.readLock().lock();
+        try {
+            if (!running) {
+                throw new IllegalStateException(name + " 가 이미 종료됨");
+            }
+            queue.add(request);
+        } finally {
+            stateLock.readLock().unlock();
+        }
+    }
+
+    private void run() {
+        List<T> batch = new ArrayList<>(maxBatchSize);
+        try {
+            while (running || !queue.isEmpty()) {
+                T first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+
+                //첫 요청 기준으로 maxDelay 까지만 더 모은다.
+                long deadline = System.nanoTime() + maxDelayNanos;
+                while (batch.size() < maxBatchSize) {
+                    queue.drainTo(batch, maxBatchSize - batch.size());
+                    long remaining = deadline - System.nanoTime();
+                    if (batch.size() >= maxBatchSize || remaining <= 0) {
+                        break;
+                    }
+                    T next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+
+                handle(batch);
+                batch.clear();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            //인터럽트로 빠져나온 경우에도 더 이상 받지 않는다.
+            stop();
+            reject(batch);
+            rejectRemaining();
+        }
+    }
+
+    private void handle(List<T> batch) {
+        try {
+            handler.accept(batch);
+        } catch (RuntimeException e) {
+            //처리 스레드가 죽으면 뒤의 요청이 영원히 안 끝난다.
+            log.error("{} 묶음 처리 실패 size={}", name, batch.size(), e);
+            for (T request : batch) {
+                rejecter.accept(request, e);
+            }
+        }
+    }
+
+    /**
+     * 남은 요청까지 처리하고 종료한다. 시간 안에 못 끝내면 남은 요청은 예외로 끝낸다.
+     */
+    @Override
+    public void close() throws InterruptedException {
+        stop();
+        flusher.join(CLOSE_TIMEOUT_MILLIS);
+        if (flusher.isAlive()) {
+            log.warn("{} 종료 대기 시간 초과, 남은 요청을 실패로 끝낸다. remaining={}", name, queue.size());
+        }
+        //flusher 가 이미 끝났으면 큐는 비어 있다. 아직 돌고 있으면 지금 붙잡고 있는 묶음만 처리하고 나머지는 여기서 끝낸다.
+        rejectRemaining();
+    }
+
+    private void stop() {
+        stateLock.writeLock().lock();
+        try {
+            running = false;
+        } finally {
+            stateLock.writeLock().unlock();
+        }
+    }
+
+    private void rejectRemaining() {
+        List<T> remaining = new ArrayList<>();
+        queue.drainTo(remaining);
+        reject(remaining);
+    }
+
+    private void reject(List<T> requests) {
+        if (requests.isEmpty()) {
+            return;
+        }
+        IllegalStateException ex = new IllegalStateException(name + " 가 종료됨");
+        for (T request : requests) {
+            rejecter.accept(request, ex);
+        }
+    }
+}
@@ -0,0 +1,25 @@
+-- member 스키마. 스프링 부트가 시작할 때 실행한다. (application.properties spring.sql.init.mode=always)
+-- 스프링 없이 도는 테스트(MemberRepositoryV5Test 등)를 돌리기 전에는 H2 콘솔에서 한번 실행해 둔다.
+-- 여러번 실행해도 안전하게 if not exists 로만 쓴다.
+
+create table if not exists member (
+    member_id varchar(10),
+    money integer not null default 0,
+    primary key (member_id)
+);
+
+-- 낙관적 락 버전. money 를 바꾸는 모든 문장이 1 올린다. (update, debit, credit, upsert, updateWithVersion)
+alter table member add column if not exists version bigint default 0 not null;
+
+-- write-behind 반영 기록. 회원별로 마지막으로 반영한 WAL 레코드 번호(lsn). (WriteBehindMemberRepository)
+-- 복구 때 이보다 크지 않은 레코드는 다시 반영하지 않는다.
+create table if not exists member_write_behind (
+    member_id varchar(10),
+    lsn bigint not null,
+    primary key (member_id)
+);
+
+-- 회원 id 블록 발급 (MemberIdAllocator). 값 하나가 id 100개 구간이다. increment 는 MemberIdAllocator.DEFAULT_BLOCK_SIZE 와 같아야 한다.
+-- 예전에 increment 1 로 만들었으면 이미 발급한 구간 뒤에서 다시 시작하게 바꾼다.
+--   alter sequence member_id_seq restart with <(지금 값 + 1) * 예전 blockSize> increment by 100
+create sequence if not exists member_id_seq start with 1 increment by 100;
@@ -0,0 +1,100 @@
+package hello.jdbc.connection;
+
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.HikariPoolMXBean;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.util.function.BooleanSupplier;
+
+import static hello.jdbc.connection.ConnectionConst.*;
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * 구간 숫자를 직접 넣어서 조절 규칙만 확인한다. (주기 작업은 1시간으로 돌지 않게)
+ * 실제로 커넥션이 줄어드는지는 resizeShrinksIdleConnections 가 H2 에 붙어서 본다.
+ */
+@Slf4j
+class AdaptivePoolSizerTest {
+
+    HikariDataSource hikari;
+    AdaptivePoolSizer sizer;
+
+    @BeforeEach
+    void beforeEach() {
+        hikari = new HikariDataSource();
+        hikari.setJdbcUrl(URL);
+        hikari.setUsername(USERNAME);
+        hikari.setPassword(PASSWORD);
+        hikari.setMaximumPoolSize(10);
+        sizer = new AdaptivePoolSizer(hikari, new InstrumentedDataSource(hikari), 2, 20, 2, 5, 3_600_000);
+    }
+
+    @AfterEach
+    void afterEach() {
+        log.info("sizer={}", sizer);
+        sizer.close();
+        hikari.close();
+    }
+
+    @Test
+    void increaseAfterTwoPressuredIntervals() {
+        //초당 1000건 x 15ms = 동시에 15개 필요, 대기 20ms
+        assertThat(sizer.evaluate(10, 1000, 15_000, 20_000, 3, 0)).isEqualTo(10);     //한 구간은 참는다.
+        assertThat(sizer.evaluate(10, 1000, 15_000, 20_000, 3, 0)).isEqualTo(18);     //추정치 15 x 1.2
+        assertThat(sizer.getLastEstimate()).isEqualTo(18);
+    }
+
+    @Test
+    void timeoutIncreasesImmediately() {
+        assertThat(sizer.evaluate(10, 10, 1_000, 30_000, 0, 1)).isEqualTo(12);
+        assertThat(sizer.evaluate(12, 10, 1_000, 30_000, 0, 1)).isEqualTo(14);      //타임아웃은 쉬는 구간도 무시
+    }
+
+    @Test
+    void decreaseAfterFiveIdleIntervals() {
+        //초당 10건 x 1ms -> 추정 1개, 대기 없음
+        for (int i = 0; i < 4; i++) {
+            assertThat(sizer.evaluate(10, 10, 1_000, 10, 0, 0)).isEqualTo(10);
+        }
+        assertThat(sizer.evaluate(10, 10, 1_000, 10, 0, 0)).isEqualTo(8);       //3/4 로
+        assertThat(sizer.evaluate(8, 10, 1_000, 10, 0, 0)).isEqualTo(8);        //바꾼 뒤에는 쉰다.
+        assertThat(sizer.getDecreaseCount()).isEqualTo(1);
+    }
+
+    @Test
+    @DisplayName("줄이면 놀고 있는 커넥션이 idleTimeout 뒤 housekeeper 에 의해 닫힌다 (Hikari 기본 minimumIdle = max 여도)")
+    void resizeShrinksIdleConnections() throws Exception {
+        //housekeeper 주기는 풀을 만들 때 읽는다. 기본 30초라 테스트에서만 줄인다.
+        System.setProperty("com.zaxxer.hikari.housekeeping.periodMs", "200");
+        try (Connection con = hikari.getConnection()) {
+            assertThat(con.isValid(1)).isTrue();
+        } finally {
+            System.clearProperty("com.zaxxer.hikari.housekeeping.periodMs");
+        }
+        HikariPoolMXBean pool = hikari.getHikariPoolMXBean();
+        awaitTrue(() -> pool.getTotalConnections() == 10);       //minimumIdle 기본값 = max 라 10개까지 채운다.
+
+        //시작할 때 검사(10초 이상)를 안 거치게 실행 중에 짧게 바꾼다.
+        hikari.getHikariConfigMXBean().setIdleTimeout(300);
+        sizer.resize(4);
+
+        awaitTrue(() -> pool.getTotalConnections() <= 4);
+        assertThat(sizer.getCurrentSize()).isEqualTo(4);
+        assertThat(hikari.getHikariConfigMXBean().getMinimumIdle()).isLessThan(4);
+    }
+
+    private static void awaitTrue(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (!condition.getAsBoolean()) {
+            if (System.currentTimeMillis() > deadline) {
+                throw new AssertionError("10초 안에 조건을 만족하지 않음");
+            }
+            Thread.sleep(50);
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package hello.jdbc.connection;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest(properties = {
+        "member.datasource.metrics.enabled=true",
+        "member.datasource.leak-detection.enabled=true",
+        "member.datasource.leak-detection.threshold-millis=50",
+        "member.datasource.leak-detection.sample-rate=1"})
+class DataSourceWrapperConfigTest {
+
+    @Autowired
+    DataSource dataSource;
+
+    @Test
+    @DisplayName("켜면 부트의 Hikari DataSource 를 InstrumentedDataSource -> LeakDetectingDataSource 순서로 감싸서 주입한다")
+    void wrapsBootDataSource() throws Exception {
+        assertThat(dataSource).isInstanceOf(InstrumentedDataSource.class);
+        InstrumentedDataSource instrumented = (InstrumentedDataSource) dataSource;
+        assertThat(instrumented.getTargetDataSource()).isInstanceOf(LeakDetectingDataSource.class);
+        assertThat(dataSource.isWrapperFor(HikariDataSource.class)).isTrue();
+
+        long before = instrumented.getAcquireHistogram().getCount();
+        new JdbcTemplate(dataSource).queryForObject("select 1", Integer.class);
+
+        assertThat(instrumented.getAcquireHistogram().getCount()).isEqualTo(before + 1);
+        assertThat(instrumented.getActiveCount()).isZero();
+    }
+
+    @Test
+    @DisplayName("주입 받은 DataSource 로 빌린 커넥션을 오래 쥐고 있으면 누수로 보고한다")
+    void leakDetection() throws Exception {
+        LeakDetectingDataSource leakDetector = (LeakDetectingDataSource) ((InstrumentedDataSource) dataSource).getTargetDataSource();
+        long before = leakDetector.getLeakCount();
+
+        try (Connection con = dataSource.getConnection()) {
+            Thread.sleep(100);
+            leakDetector.checkForLeaks();
+            assertThat(leakDetector.getLeakCount()).isEqualTo(before + 1);
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package hello.jdbc.connection;
+
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+
+import static hello.jdbc.connection.ConnectionConst.*;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.within;
+
+@Slf4j
+class InstrumentedDataSourceTest {
+
+    SimpleConnectionPool pool = new SimpleConnectionPool(URL, USERNAME, PASSWORD, 1, 1, 60_000, 100);
+    InstrumentedDataSource dataSource = new InstrumentedDataSource(pool);
+
+    @AfterEach
+    void afterEach() {
+        dataSource.logSummary();
+        dataSource.close();
+        pool.close();
+    }
+
+    @Test
+    void holdAndTimeout() throws SQLException, InterruptedException {
+        Connection con = dataSource.getConnection();
+        assertThat(dataSource.getActiveCount()).isEqualTo(1);
+
+        //풀이 1개라 두번째는 타임아웃
+        assertThatThrownBy(() -> dataSource.getConnection()).isInstanceOf(SQLTransientConnectionException.class);
+        assertThat(dataSource.getTimeoutCount()).isEqualTo(1);
+
+        Thread.sleep(20);
+        con.close();
+        con.close();        //두번 닫아도 한번만 기록
+
+        assertThat(dataSource.getActiveCount()).isZero();
+        assertThat(dataSource.getHoldHistogram().getCount()).isEqualTo(1);
+        assertThat(dataSource.getHoldHistogram().getMax()).isGreaterThanOrEqualTo(20_000);      //마이크로초
+        assertThat(dataSource.getAcquireHistogram().getCount()).isEqualTo(1);
+    }
+
+    @Test
+    void histogram() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 1; i <= 1000; i++) {
+            histogram.record(i);
+        }
+        //버킷 오차 12.5% 이내
+        assertThat((double) histogram.getValueAtPercentile(50)).isCloseTo(500, within(500 * 0.125));
+        assertThat((double) histogram.getValueAtPercentile(99)).isCloseTo(990, within(990 * 0.125));
+        assertThat(histogram.getValueAtPercentile(100)).isEqualTo(1000);
+        assertThat(histogram.getMean()).isEqualTo(500.5);
+    }
+}
@@ -0,0 +1,56 @@
+package hello.jdbc.connection;
+
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+
+import static hello.jdbc.connection.ConnectionConst.*;
+import static org.assertj.core.api.Assertions.assertThat;
+
+@Slf4j
+class LeakDetectingDataSourceTest {
+
+    SimpleConnectionPool pool = new SimpleConnectionPool(URL, USERNAME, PASSWORD, 5, 1, 60_000, 1000);
+
+    @AfterEach
+    void afterEach() {
+        pool.close();
+    }
+
+    @Test
+    void leak() throws SQLException, InterruptedException {
+        LeakDetectingDataSource dataSource = new LeakDetectingDataSource(pool, 50, 1.0);
+
+        Connection leaked = dataSource.getConnection();     //반납 안 함
+        Connection returned = dataSource.getConnection();
+        returned.close();
+
+        Thread.sleep(100);
+        dataSource.checkForLeaks();
+
+        //반납 안 한 것 하나만 보고된다. (주기 검사가 먼저 찾았을 수도 있다)
+        assertThat(dataSource.getLeakCount()).isEqualTo(1);
+        assertThat(dataSource.getTrackedCount()).isZero();      //보고한 것은 추적 목록에서 빠진다.
+        assertThat(dataSource.checkForLeaks()).isZero();       //같은 커넥션은 한번만
+
+        leaked.close();
+        leaked.close();
+        assertThat(dataSource.getLeakCount()).isEqualTo(1);
+        assertThat(dataSource.getTrackedCount()).isZero();
+        dataSource.close();
+    }
+
+    @Test
+    void samplingOff() throws SQLException {
+        LeakDetectingDataSource dataSource = new LeakDetectingDataSource(pool, 50, 0);
+
+        Connection con = dataSource.getConnection();
+        assertThat(dataSource.getSampledCount()).isZero();      //감싸지 않고 그대로 준다.
+        assertThat(dataSource.getTrackedCount()).isZero();
+        con.close();
+        dataSource.close();
+    }
+}
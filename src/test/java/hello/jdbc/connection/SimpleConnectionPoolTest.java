@@ -0,0 +1,170 @@
+package hello.jdbc.connection;
+
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.SQLTransientConnectionException;
+import java.sql.Statement;
+
+import static hello.jdbc.connection.ConnectionConst.*;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@Slf4j
+class SimpleConnectionPoolTest {
+
+    SimpleConnectionPool pool = new SimpleConnectionPool(URL, USERNAME, PASSWORD, 2, 1, 60_000, 200);
+
+    @AfterEach
+    void afterEach() {
+        log.info("pool={}", pool);
+        pool.close();
+    }
+
+    @Test
+    void prefillMinimumIdle() throws SQLException {
+        //만들 때 minimumIdle(1) 개를 미리 만든다.
+        assertThat(pool.getIdleCount()).isEqualTo(1);
+        assertThat(pool.getCreatedCount()).isEqualTo(1);
+
+        pool.getConnection().close();
+        assertThat(pool.getCreatedCount()).isEqualTo(1);        //미리 만든 것을 빌려줬다.
+    }
+
+    @Test
+    void reuse() throws SQLException {
+        Connection con1 = pool.getConnection();
+        String physical = con1.toString();
+        con1.close();       //닫으면 풀로 반납
+
+        Connection con2 = pool.getConnection();
+        assertThat(con2.toString()).isEqualTo(physical);        //같은 물리 커넥션
+        assertThat(con1.isClosed()).isTrue();
+        assertThat(pool.getCreatedCount()).isEqualTo(1);
+        con2.close();
+    }
+
+    @Test
+    void exhausted() throws SQLException {
+        Connection con1 = pool.getConnection();
+        Connection con2 = pool.getConnection();
+
+        //최대 2개. 세번째는 connectionTimeout(200ms) 후 실패
+        assertThatThrownBy(() -> pool.getConnection()).isInstanceOf(SQLTransientConnectionException.class);
+        assertThat(pool.getTimeoutCount()).isEqualTo(1);
+
+        con1.close();
+        pool.getConnection().close();       //반납되면 다시 빌릴 수 있다.
+        con2.close();
+    }
+
+    @Test
+    void resetAutoCommit() throws SQLException {
+        Connection con = pool.getConnection();
+        con.setAutoCommit(false);       //트랜잭션을 열어둔 채로 반납
+        con.close();
+
+        Connection next = pool.getConnection();
+        assertThat(next.getAutoCommit()).isTrue();
+        next.close();
+    }
+
+    @Test
+    void resetReadOnlyAndIsolation() throws SQLException {
+        Connection con = pool.getConnection();
+        int isolation = con.getTransactionIsolation();
+        con.setReadOnly(true);
+        con.setTransactionIsolation(Connection.TRANSACTION_SERIALIZABLE);
+        con.close();
+
+        Connection next = pool.getConnection();
+        assertThat(next.isReadOnly()).isFalse();
+        assertThat(next.getTransactionIsolation()).isEqualTo(isolation);
+        next.close();
+    }
+
+    @Test
+    void otherAccountNotSupported() {
+        assertThatThrownBy(() -> pool.getConnection("other", "secret")).isInstanceOf(SQLFeatureNotSupportedException.class);
+    }
+
+    @Test
+    void evictIdle() throws Exception {
+        SimpleConnectionPool shortIdle = new SimpleConnectionPool(URL, USERNAME, PASSWORD, 3, 1, 100, 200);
+        try {
+            Connection con1 = shortIdle.getConnection();
+            Connection con2 = shortIdle.getConnection();
+            Connection con3 = shortIdle.getConnection();
+            con1.close();
+            con2.close();
+            con3.close();
+            assertThat(shortIdle.getIdleCount()).isEqualTo(3);
+
+            Thread.sleep(200);      //idleTimeout(100ms) 보다 오래 논다.
+            shortIdle.evictIdle();
+
+            assertThat(shortIdle.getIdleCount()).isEqualTo(1);      //minimumIdle 만 남긴다.
+            assertThat(shortIdle.getEvictedCount()).isEqualTo(2);
+        } finally {
+            shortIdle.close();
+        }
+    }
+
+    @Test
+    void physicalConnectionNotExposed() throws SQLException {
+        Connection con = pool.getConnection();
+        assertThat(con.unwrap(Connection.class)).isSameAs(con);
+        assertThatThrownBy(() -> con.unwrap(Statement.class)).isInstanceOf(SQLException.class);      //프록시 말고는 아무것도 안 나온다.
+
+        PreparedStatement pstmt = con.prepareStatement("select 1");
+        assertThat(pstmt.getConnection()).isSameAs(con);
+        ResultSet rs = pstmt.executeQuery();
+        assertThat(rs.getStatement()).isSameAs(pstmt);
+        rs.close();
+        pstmt.close();
+        con.close();
+    }
+
+    @Test
+    void closeStatementsOnReturn() throws SQLException {
+        Connection con = pool.getConnection();
+        Statement stmt = con.createStatement();     //안 닫고 반납
+        PreparedStatement pstmt = con.prepareStatement("select 1");
+        con.close();
+
+        assertThat(stmt.isClosed()).isTrue();
+        assertThat(pstmt.isClosed()).isTrue();
+    }
+
+    @Test
+    void validateBeforeLend() throws Exception {
+        Connection con = pool.getConnection();
+        int sessionId;
+        try (Statement stmt = con.createStatement(); ResultSet rs = stmt.executeQuery("select session_id()")) {
+            rs.next();
+            sessionId = rs.getInt(1);
+        }
+        con.close();
+
+        //풀에서 노는 동안 끊겼다. (DB 재시작 등)
+        try (Connection admin = DriverManager.getConnection(URL, USERNAME, PASSWORD);
+             Statement stmt = admin.createStatement()) {
+            stmt.execute("call abort_session(" + sessionId + ")");
+        }
+
+        Thread.sleep(600);      //방금 반납된 커넥션(500ms 이내)은 검증을 건너뛴다.
+        Connection next = pool.getConnection();
+
+        assertThat(next.isValid(1)).isTrue();
+        assertThat(pool.getInvalidCount()).isEqualTo(1);
+        assertThat(pool.getCreatedCount()).isEqualTo(2);        //끊긴 것은 버리고 새로 만들었다.
+        next.close();
+    }
+}
@@ -0,0 +1,197 @@
+package hello.jdbc.repository;
+
+import com.zaxxer.hikari.HikariDataSource;
+import hello.jdbc.domain.Member;
+import hello.jdbc.domain.MemberPage;
+import hello.jdbc.repository.ex.MyOptimisticLockException;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DuplicateKeyException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+import static hello.jdbc.connection.ConnectionConst.*;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@Slf4j
+class MemberRepositoryV5Test {
+
+    HikariDataSource dataSource;
+    MemberRepositoryV5 repository;
+    List<String> savedIds = new ArrayList<>();
+
+    @BeforeEach
+    void beforeEach(){
+        dataSource = new HikariDataSource();
+        dataSource.setJdbcUrl(URL);
+        dataSource.setUsername(USERNAME);
+        dataSource.setPassword(PASSWORD);
+
+        repository = new MemberRepositoryV5(dataSource);
+    }
+
+    @AfterEach
+    void afterEach(){
+        for (String memberId : savedIds) {
+            repository.delete(memberId);
+        }
+        dataSource.close();
+    }
+
+    @Test
+    void saveAll(){
+        List<Member> members = new ArrayList<>();
+        for (int i = 0; i < 25; i++) {
+            members.add(new Member("batch" + i, i * 100));
+            savedIds.add("batch" + i);
+        }
+
+        repository.saveAll(members, 10);        //10, 10, 5 세번으로 나눠서 보낸다.
+
+        assertThat(repository.findById("batch0").getMoney()).isEqualTo(0);
+        assertThat(repository.findById("batch24").getMoney()).isEqualTo(2400);
+    }
+
+    @Test
+    void saveAllDuplicateKey(){
+        repository.save(new Member("batchDup", 0));
+        savedIds.add("batchDup");
+        savedIds.add("batchNew");
+
+        List<Member> members = List.of(new Member("batchNew", 0), new Member("batchDup", 0));
+
+        //실패한 memberId 가 메시지에 들어있어야 한다.
+        assertThatThrownBy(() -> repository.saveAll(members))
+                .isInstanceOf(DuplicateKeyException.class)
+                .hasMessageContaining("batchDup");
+    }
+
+    @Test
+    void upsertAll(){
+        repository.save(new Member("upsert0", 0));
+        List<Member> members = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            members.add(new Member("upsert" + i, 500));
+            savedIds.add("upsert" + i);
+        }
+
+        //이미 있는 upsert0 은 update, 나머지는 insert. 키 중복 예외가 안 난다.
+        repository.upsertAll(members, 2);
+        repository.upsert(new Member("upsert4", 900));
+
+        assertThat(repository.findById("upsert0").getMoney()).isEqualTo(500);
+        assertThat(repository.findById("upsert3").getMoney()).isEqualTo(500);
+        assertThat(repository.findById("upsert4").getMoney()).isEqualTo(900);
+    }
+
+    @Test
+    void trySaveAndFindOptional(){
+        savedIds.add("optional");
+
+        //예외 없이 값으로 돌려준다.
+        assertThat(repository.findOptional("optional")).isEmpty();
+        assertThat(repository.trySave(new Member("optional", 100))).isEqualTo(SaveResult.SAVED);
+        assertThat(repository.trySave(new Member("optional", 200))).isEqualTo(SaveResult.DUPLICATE);
+
+        assertThat(repository.findOptional("optional")).get()
+                .extracting(Member::getMoney).isEqualTo(100);
+    }
+
+    @Test
+    void findAllById(){
+        List<Member> members = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            members.add(new Member("multi" + i, i));
+            savedIds.add("multi" + i);
+        }
+        repository.saveAll(members);
+
+        List<String> ids = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            ids.add("multi" + i);
+        }
+        ids.add("multiNone");       //없는 회원은 예외 없이 빠진다.
+
+        Map<String, Member> result = repository.findAllById(ids);
+        assertThat(result).hasSize(20);
+        assertThat(result.get("multi7").getMoney()).isEqualTo(7);
+        assertThat(result).doesNotContainKey("multiNone");
+    }
+
+    @Test
+    void findPage(){
+        List<Member> members = new ArrayList<>();
+        for (int i = 0; i < 25; i++) {
+            String memberId = String.format("pg%02d", i);
+            members.add(new Member(memberId, i));
+            savedIds.add(memberId);
+        }
+        repository.saveAll(members);
+
+        //"pg" 바로 다음부터 읽는다. 다음 페이지는 continuationToken 을 넘긴다.
+        MemberPage first = repository.findPage("pg", 10);
+        assertThat(first.getMembers()).extracting(Member::getMemberId).startsWith("pg00").endsWith("pg09");
+        assertThat(first.getContinuationToken()).isEqualTo("pg09");
+
+        MemberPage second = repository.findPage(first.getContinuationToken(), 10);
+        assertThat(second.getMembers()).extracting(Member::getMemberId).startsWith("pg10").endsWith("pg19");
+
+        //역순
+        MemberPage before = repository.findPageBefore("pg10", 5);
+        assertThat(before.getMembers()).extracting(Member::getMemberId)
+                .containsExactly("pg09", "pg08", "pg07", "pg06", "pg05");
+        assertThat(before.hasNext()).isTrue();
+    }
+
+    @Test
+    void streamAll(){
+        List<Member> members = new ArrayList<>();
+        for (int i = 0; i < 30; i++) {
+            members.add(new Member("stream" + i, i));
+            savedIds.add("stream" + i);
+        }
+        repository.saveAll(members);
+
+        //스트림은 꼭 닫아야 커넥션이 반환된다.
+        try (Stream<Member> stream = repository.streamAll(10)) {
+            long count = stream.filter(member -> member.getMemberId().startsWith("stream")).count();
+            assertThat(count).isEqualTo(30);
+        }
+
+        AtomicInteger count = new AtomicInteger();
+        repository.streamAll(10, member -> {
+            if (member.getMemberId().startsWith("stream")) {
+                count.incrementAndGet();
+            }
+        });
+        assertThat(count.get()).isEqualTo(30);
+    }
+
+    @Test
+    @DisplayName("debit, upsert 도 version 을 올린다 - 그 전에 읽은 version 으로는 못 쓴다")
+    void relativeWriteBumpsVersion(){
+        repository.save(new Member("versionA", 10000));
+        savedIds.add("versionA");
+
+        Member read = repository.findByIdWithVersion("versionA");
+        assertThat(repository.debit("versionA", 1000)).isTrue();       //읽은 뒤 다른 쪽이 상대값으로 출금
+
+        assertThatThrownBy(() -> repository.updateWithVersion("versionA", read.getMoney() - 500, read.getVersion()))
+                .isInstanceOf(MyOptimisticLockException.class);
+        assertThat(repository.findById("versionA").getMoney()).isEqualTo(9000);     //출금이 덮어써지지 않았다.
+
+        Member reread = repository.findByIdWithVersion("versionA");
+        repository.upsert(new Member("versionA", 7000));
+        assertThatThrownBy(() -> repository.updateWithVersion("versionA", 0, reread.getVersion()))
+                .isInstanceOf(MyOptimisticLockException.class);
+        assertThat(repository.findByIdWithVersion("versionA").getVersion()).isEqualTo(reread.getVersion() + 1);
+    }
+}
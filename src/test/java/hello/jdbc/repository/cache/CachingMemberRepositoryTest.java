@@ -0,0 +1,100 @@
+package hello.jdbc.repository.cache;
+
+import hello.jdbc.domain.Member;
+import hello.jdbc.repository.MemberRepository;
+import hello.jdbc.repository.MemberRepositoryV5;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+
+import javax.sql.DataSource;
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * 읽기 캐시 데코레이터 - V5 에 씌워서 쓴다.
+ */
+@Slf4j
+@SpringBootTest
+class CachingMemberRepositoryTest {
+
+    public static final String MEMBER_A = "memberA";
+
+    @Autowired
+    private CachingMemberRepository memberRepository;
+
+    @TestConfiguration
+    static class TestConfig {
+
+        private final DataSource dataSource;
+
+        @Autowired
+        public TestConfig(DataSource dataSource) {
+            this.dataSource = dataSource;
+        }
+
+        @Bean
+        CachingMemberRepository memberRepository() {
+            //V4_1, V4_2 로 바꿔 끼워도 된다.
+            return new CachingMemberRepository(new MemberRepositoryV5(dataSource), new MemberCache(1024, Duration.ofMinutes(1)));
+        }
+    }
+
+    @AfterEach
+    void after() {
+        memberRepository.delete(MEMBER_A);
+        log.info("cache={}", memberRepository.getCache());
+    }
+
+    @Test
+    @DisplayName("두번째 조회부터는 캐시에서")
+    void readThrough() {
+        memberRepository.save(new Member(MEMBER_A, 10000));
+        MemberCache cache = memberRepository.getCache();
+        long misses = cache.getMissCount();
+        long hits = cache.getHitCount();
+
+        memberRepository.findById(MEMBER_A);
+        Member cached = memberRepository.findById(MEMBER_A);
+
+        assertThat(cached.getMoney()).isEqualTo(10000);
+        assertThat(cache.getMissCount() - misses).isEqualTo(1);
+        assertThat(cache.getHitCount() - hits).isEqualTo(1);
+
+        //꺼낸 객체를 바꿔도 캐시는 그대로다.
+        cached.setMoney(0);
+        assertThat(memberRepository.findById(MEMBER_A).getMoney()).isEqualTo(10000);
+    }
+
+    @Test
+    @DisplayName("update 하면 캐시에서 지워진다")
+    void invalidateOnUpdate() {
+        memberRepository.save(new Member(MEMBER_A, 10000));
+        memberRepository.findById(MEMBER_A);
+
+        memberRepository.update(MEMBER_A, 5000);
+        assertThat(memberRepository.findById(MEMBER_A).getMoney()).isEqualTo(5000);
+
+        memberRepository.debit(MEMBER_A, 1000);
+        assertThat(memberRepository.findById(MEMBER_A).getMoney()).isEqualTo(4000);
+    }
+
+    @Test
+    @DisplayName("크기를 넘으면 오래 안쓴 것부터 빠진다")
+    void eviction() {
+        MemberCache cache = new MemberCache(16, Duration.ofMinutes(1));      //세그먼트당 1개
+        long stamp = cache.stamp();
+        for (int i = 0; i < 100; i++) {
+            cache.put(new Member("m" + i, i), stamp);
+        }
+
+        assertThat(cache.size()).isLessThanOrEqualTo(16);
+        assertThat(cache.getEvictionCount()).isEqualTo(100 - cache.size());
+    }
+}
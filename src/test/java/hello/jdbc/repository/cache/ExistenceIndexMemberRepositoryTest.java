@@ -0,0 +1,133 @@
+package hello.jdbc.repository.cache;
+
+import hello.jdbc.domain.Member;
+import hello.jdbc.repository.DelegatingMemberRepository;
+import hello.jdbc.repository.MemberRepositoryV5;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Stream;
+
+import static hello.jdbc.connection.ConnectionConst.*;
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Bloom filter + 음성 캐시로 exists 를 먼저 거른다.
+ */
+@Slf4j
+class ExistenceIndexMemberRepositoryTest {
+
+    public static final String MEMBER_A = "memberA";
+    public static final String MEMBER_B = "memberB";
+
+    private MemberRepositoryV5 memberRepositoryV5;
+    private ExistenceIndexMemberRepository memberRepository;
+
+    @BeforeEach
+    void before() {
+        DriverManagerDataSource dataSource = new DriverManagerDataSource(URL, USERNAME, PASSWORD);
+        memberRepositoryV5 = new MemberRepositoryV5(dataSource);
+        memberRepositoryV5.save(new Member(MEMBER_A, 10000));
+
+        memberRepository = ExistenceIndexMemberRepository.load(memberRepositoryV5, 10_000, 0.01, Duration.ofSeconds(5), 1000);
+    }
+
+    @Test
+    @DisplayName("load 로 만들면 시작부터 필터가 채워져 있다")
+    void loadFillsFilter() {
+        assertThat(memberRepository.exists(MEMBER_A)).isTrue();
+        assertThat(memberRepository.exists("nobody")).isFalse();
+
+        assertThat(memberRepository.getFilterRejectCount()).isEqualTo(1);       //없는 회원은 필터에서 걸렀다.
+    }
+
+    @Test
+    @DisplayName("생성자로 만들고 rebuild 전에는 전부 DB 로 간다")
+    void beforeRebuild() {
+        ExistenceIndexMemberRepository notLoaded =
+                new ExistenceIndexMemberRepository(memberRepositoryV5, 10_000, 0.01, Duration.ofSeconds(5), 1000);
+        assertThat(notLoaded.exists("nobody")).isFalse();
+
+        assertThat(notLoaded.getFilterRejectCount()).isZero();
+        assertThat(notLoaded.getLookupCount()).isEqualTo(1);
+    }
+
+    @AfterEach
+    void after() {
+        memberRepository.delete(MEMBER_A);
+        memberRepository.delete(MEMBER_B);
+        log.info("index={}", memberRepository);
+    }
+
+    @Test
+    @DisplayName("없는 회원은 대부분 DB 까지 안 간다")
+    void missShortCircuit() {
+        for (int i = 0; i < 1000; i++) {
+            assertThat(memberRepository.exists("nobody-" + i)).isFalse();
+        }
+        //오탐률 1% 로 만들었으니 DB 까지 간 건 몇 건 안 된다.
+        assertThat(memberRepository.getLookupCount()).isLessThan(50);
+        assertThat(memberRepository.getFilterRejectCount()).isGreaterThan(950);
+    }
+
+    @Test
+    @DisplayName("있는 회원은 DB 로 확인하고, save 한 회원은 바로 보인다")
+    void hitAndSave() {
+        assertThat(memberRepository.exists(MEMBER_A)).isTrue();
+
+        assertThat(memberRepository.exists(MEMBER_B)).isFalse();
+        memberRepository.save(new Member(MEMBER_B, 5000));
+        assertThat(memberRepository.exists(MEMBER_B)).isTrue();
+    }
+
+    @Test
+    @DisplayName("delete 한 회원은 음성 캐시에서 false")
+    void deleteRemembersAbsence() {
+        memberRepository.delete(MEMBER_A);
+
+        assertThat(memberRepository.exists(MEMBER_A)).isFalse();
+        assertThat(memberRepository.exists(MEMBER_A)).isFalse();
+        assertThat(memberRepository.getNegativeHitCount()).isEqualTo(2);
+        assertThat(memberRepository.getLookupCount()).isZero();
+    }
+
+    @Test
+    @DisplayName("rebuild 스캔을 열기 전에 들어온 save 도 새 필터에 들어간다")
+    void saveBeforeScanOpens() {
+        memberRepository.rebuild(() -> {
+            memberRepository.save(new Member(MEMBER_B, 5000));
+            return Stream.of(MEMBER_A);     //스캔 스냅샷에 memberB 가 안 보인 경우
+        });
+
+        long rejects = memberRepository.getFilterRejectCount();
+        assertThat(memberRepository.exists(MEMBER_B)).isTrue();
+        assertThat(memberRepository.getFilterRejectCount()).isEqualTo(rejects);
+    }
+
+    @Test
+    @DisplayName("DB 에서 '없음' 을 읽은 뒤 save 가 끝나면 그 '없음' 은 기억하지 않는다")
+    void staleAbsenceIsDropped() {
+        AtomicBoolean saveDuringLookup = new AtomicBoolean(true);
+        ExistenceIndexMemberRepository[] index = new ExistenceIndexMemberRepository[1];
+        DelegatingMemberRepository target = new DelegatingMemberRepository(memberRepositoryV5) {
+            @Override
+            public boolean exists(String memberId) {
+                boolean exists = super.exists(memberId);
+                if (saveDuringLookup.getAndSet(false)) {
+                    index[0].save(new Member(memberId, 5000));      //조회 결과가 돌아가기 전에 다른 쪽이 저장
+                }
+                return exists;
+            }
+        };
+        index[0] = new ExistenceIndexMemberRepository(target, 10_000, 0.01, Duration.ofSeconds(5), 1000);
+
+        assertThat(index[0].exists(MEMBER_B)).isFalse();
+        assertThat(index[0].exists(MEMBER_B)).isTrue();     //음성 캐시에 남았으면 5초 동안 false
+    }
+}
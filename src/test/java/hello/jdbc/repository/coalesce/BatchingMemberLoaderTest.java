@@ -0,0 +1,75 @@
+package hello.jdbc.repository.coalesce;
+
+import hello.jdbc.domain.Member;
+import hello.jdbc.repository.MemberRepository;
+import hello.jdbc.repository.MemberRepositoryV5;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+import java.util.NoSuchElementException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+import static hello.jdbc.connection.ConnectionConst.*;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * findById 마이크로 배치
+ */
+@Slf4j
+class BatchingMemberLoaderTest {
+
+    public static final String MEMBER_A = "memberA";
+    public static final String MEMBER_B = "memberB";
+
+    private MemberRepository memberRepository;
+    private BatchingMemberLoader loader;
+
+    @BeforeEach
+    void before() {
+        memberRepository = new MemberRepositoryV5(new DriverManagerDataSource(URL, USERNAME, PASSWORD));
+        loader = new BatchingMemberLoader(memberRepository, 64, 50_000);
+    }
+
+    @AfterEach
+    void after() throws InterruptedException {
+        loader.close();
+        memberRepository.delete(MEMBER_A);
+        memberRepository.delete(MEMBER_B);
+    }
+
+    @Test
+    @DisplayName("창 안에 들어온 조회는 IN 절 하나로")
+    void batch() throws Exception {
+        memberRepository.save(new Member(MEMBER_A, 10000));
+        memberRepository.save(new Member(MEMBER_B, 20000));
+
+        CompletableFuture<Member> a = loader.load(MEMBER_A);
+        CompletableFuture<Member> b = loader.load(MEMBER_B);
+        CompletableFuture<Member> a2 = loader.load(MEMBER_A);
+        CompletableFuture<Member> none = loader.load("none");
+
+        assertThat(a.get().getMoney()).isEqualTo(10000);
+        assertThat(b.get().getMoney()).isEqualTo(20000);
+        assertThat(a2.get().getMoney()).isEqualTo(10000);
+        assertThatThrownBy(none::get)
+                .isInstanceOf(ExecutionException.class)
+                .hasCauseInstanceOf(NoSuchElementException.class);
+        assertThat(loader.getBatchCount()).isEqualTo(1);
+    }
+
+    @Test
+    @DisplayName("데코레이터로 쓰면 findById 그대로")
+    void decorator() {
+        memberRepository.save(new Member(MEMBER_A, 10000));
+        BatchingMemberRepository repository = new BatchingMemberRepository(memberRepository, loader);
+
+        assertThat(repository.findById(MEMBER_A).getMoney()).isEqualTo(10000);
+        assertThatThrownBy(() -> repository.findById("none")).isInstanceOf(NoSuchElementException.class);
+    }
+}
@@ -0,0 +1,88 @@
+package hello.jdbc.repository.coalesce;
+
+import hello.jdbc.domain.Member;
+import hello.jdbc.repository.DelegatingMemberRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * single-flight - 같은 id 동시 조회는 쿼리 한번
+ */
+@Slf4j
+class SingleFlightMemberRepositoryTest {
+
+    private static final int THREADS = 10;
+
+    private final AtomicInteger dbCalls = new AtomicInteger();
+    private SingleFlightMemberRepository repository;
+
+    /**
+     * 다른 스레드가 전부 leader 를 기다리기 시작할 때까지 조회를 붙잡아 두는 가짜 리포지토리
+     */
+    private class SlowRepository extends DelegatingMemberRepository {
+        SlowRepository() {
+            super(null);
+        }
+
+        @Override
+        public Member findById(String memberId) {
+            dbCalls.incrementAndGet();
+            long deadline = System.currentTimeMillis() + 5000;
+            while (repository.getSharedCount() < THREADS - 1 && System.currentTimeMillis() < deadline) {
+                Thread.onSpinWait();
+            }
+            if (memberId.equals("none")) {
+                throw new NoSuchElementException("member not found memberId=" + memberId);
+            }
+            return new Member(memberId, 10000);
+        }
+    }
+
+    @Test
+    @DisplayName("동시에 같은 id 를 조회하면 DB 는 한번")
+    void shareResult() throws Exception {
+        repository = new SingleFlightMemberRepository(new SlowRepository());
+
+        for (Future<Member> future : findConcurrently("memberA")) {
+            assertThat(future.get().getMoney()).isEqualTo(10000);
+        }
+        assertThat(dbCalls.get()).isEqualTo(1);
+        assertThat(repository.getQueryCount()).isEqualTo(1);
+    }
+
+    @Test
+    @DisplayName("없는 회원이면 기다리던 스레드 모두 NoSuchElementException")
+    void shareException() throws Exception {
+        repository = new SingleFlightMemberRepository(new SlowRepository());
+
+        for (Future<Member> future : findConcurrently("none")) {
+            assertThatThrownBy(future::get)
+                    .isInstanceOf(ExecutionException.class)
+                    .hasCauseInstanceOf(NoSuchElementException.class);
+        }
+        assertThat(dbCalls.get()).isEqualTo(1);
+    }
+
+    private List<Future<Member>> findConcurrently(String memberId) {
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        List<Future<Member>> futures = new ArrayList<>();
+        for (int i = 0; i < THREADS; i++) {
+            futures.add(executor.submit(() -> repository.findById(memberId)));
+        }
+        executor.shutdown();
+        return futures;
+    }
+}
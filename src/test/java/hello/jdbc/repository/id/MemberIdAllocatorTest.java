@@ -0,0 +1,84 @@
+package hello.jdbc.repository.id;
+
+import hello.jdbc.domain.Member;
+import hello.jdbc.repository.MemberRepositoryV5;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static hello.jdbc.connection.ConnectionConst.*;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * 블록 단위 id 발급 - 재시도 없이 insert
+ */
+@Slf4j
+class MemberIdAllocatorTest {
+
+    DriverManagerDataSource dataSource = new DriverManagerDataSource(URL, USERNAME, PASSWORD);
+
+    @Test
+    @DisplayName("여러 서버, 여러 스레드에서 발급해도 겹치지 않는다")
+    void unique() throws Exception {
+        //서버 두대를 흉내낸다. 같은 시퀀스를 쓴다.
+        MemberIdAllocator node1 = new MemberIdAllocator(dataSource, "m");
+        MemberIdAllocator node2 = new MemberIdAllocator(dataSource, "m");
+        Set<String> ids = ConcurrentHashMap.newKeySet();
+        int perThread = 1000;
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            MemberIdAllocator allocator = i % 2 == 0 ? node1 : node2;
+            futures.add(executor.submit(() -> {
+                for (int j = 0; j < perThread; j++) {
+                    ids.add(allocator.nextId());
+                }
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        executor.shutdown();
+
+        assertThat(ids).hasSize(8 * perThread);
+        //블록 100개 단위라 스레드당 10번만 DB 에 갔다.
+        assertThat(node1.getReservedBlockCount() + node2.getReservedBlockCount()).isEqualTo(8 * perThread / MemberIdAllocator.DEFAULT_BLOCK_SIZE);
+    }
+
+    @Test
+    @DisplayName("발급한 id 로 바로 저장한다")
+    void save() {
+        MemberIdAllocator allocator = new MemberIdAllocator(dataSource, "m");
+        MemberRepositoryV5 repository = new MemberRepositoryV5(dataSource);
+
+        List<Member> members = new ArrayList<>();
+        for (int i = 0; i < 25; i++) {
+            members.add(new Member(allocator.nextId(), 1000));
+        }
+        log.info("first={} last={}", members.get(0).getMemberId(), members.get(members.size() - 1).getMemberId());
+        try {
+            repository.saveAll(members);
+            assertThat(repository.findById(members.get(24).getMemberId()).getMoney()).isEqualTo(1000);
+        } finally {
+            members.forEach(member -> repository.delete(member.getMemberId()));
+        }
+    }
+
+    @Test
+    @DisplayName("시퀀스 increment 와 다른 blockSize 는 시작할 때 막는다")
+    void blockSizeMismatch() {
+        assertThatThrownBy(() -> new MemberIdAllocator(dataSource, "m", 10))
+                .isInstanceOf(IllegalStateException.class);
+    }
+}
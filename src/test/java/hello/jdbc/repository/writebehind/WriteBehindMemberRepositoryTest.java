@@ -0,0 +1,159 @@
+package hello.jdbc.repository.writebehind;
+
+import hello.jdbc.domain.Member;
+import hello.jdbc.repository.MemberRepository;
+import hello.jdbc.repository.MemberRepositoryV5;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static hello.jdbc.connection.ConnectionConst.*;
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * write-behind - update 를 모아서 나중에 반영, WAL 로 복구
+ */
+@Slf4j
+class WriteBehindMemberRepositoryTest {
+
+    public static final String MEMBER_A = "memberA";
+
+    @TempDir
+    Path walDir;
+
+    private DriverManagerDataSource dataSource;
+    private MemberRepository target;
+
+    @BeforeEach
+    void before() {
+        dataSource = new DriverManagerDataSource(URL, USERNAME, PASSWORD);
+        target = new MemberRepositoryV5(dataSource);
+        target.save(new Member(MEMBER_A, 0));
+    }
+
+    @AfterEach
+    void after() {
+        target.delete(MEMBER_A);
+        new JdbcTemplate(dataSource).update("delete from member_write_behind where member_id = ?", MEMBER_A);
+    }
+
+    @Test
+    @DisplayName("update 는 모였다가 flush 때 마지막 값만 반영")
+    void coalesce() {
+        //주기 flush 는 안 돌도록 길게
+        try (WriteBehindMemberRepository repository = new WriteBehindMemberRepository(
+                target, dataSource, new DataSourceTransactionManager(dataSource), walDir, 60_000, 5)) {
+            for (int i = 1; i <= 100; i++) {
+                repository.update(MEMBER_A, i);
+            }
+
+            assertThat(target.findById(MEMBER_A).getMoney()).isEqualTo(0);          //아직 DB 는 그대로
+            assertThat(repository.findById(MEMBER_A).getMoney()).isEqualTo(100);    //내가 쓴 값은 보인다
+
+            repository.flush();
+
+            assertThat(target.findById(MEMBER_A).getMoney()).isEqualTo(100);
+            assertThat(repository.getUpdateCount()).isEqualTo(100);
+            assertThat(repository.getFlushedRowCount()).isEqualTo(1);
+            assertThat(repository.getPendingCount()).isEqualTo(0);
+        }
+    }
+
+    @Test
+    @DisplayName("반영 전에 죽었으면 다음 시작 때 WAL 로 복구")
+    void recover() {
+        //반영되지 못하고 WAL 에만 남은 상태를 만든다.
+        WriteAheadLog wal = new WriteAheadLog(walDir);
+        wal.append(MEMBER_A, 500);
+        wal.append(MEMBER_A, 700);
+        wal.close();
+
+        try (WriteBehindMemberRepository repository = new WriteBehindMemberRepository(
+                target, dataSource, new DataSourceTransactionManager(dataSource), walDir, 60_000, 5)) {
+            assertThat(target.findById(MEMBER_A).getMoney()).isEqualTo(700);
+        }
+
+        //반영된 WAL 은 지워졌다.
+        List<String> left = new ArrayList<>();
+        WriteAheadLog.replay(walDir, (id, money, lsn) -> left.add(id));
+        assertThat(left).isEmpty();
+    }
+
+    @Test
+    @DisplayName("반영한 세그먼트가 남아 있어도 다시 반영하지 않는다 - 그 사이의 debit 을 덮어쓰지 않는다")
+    void replayIsIdempotent() throws IOException {
+        WriteAheadLog wal = new WriteAheadLog(walDir);
+        wal.append(MEMBER_A, 700);
+        wal.close();
+        //세그먼트 삭제가 실패한 상황을 만들려고 복사해 둔다.
+        Path backup = Files.createTempDirectory("wal-backup");
+        List<Path> segments = new ArrayList<>();
+        try (Stream<Path> files = Files.list(walDir)) {
+            files.forEach(segments::add);
+        }
+        for (Path segment : segments) {
+            Files.copy(segment, backup.resolve(segment.getFileName()));
+        }
+
+        new WriteBehindMemberRepository(target, dataSource, new DataSourceTransactionManager(dataSource), walDir, 60_000, 5).close();
+        assertThat(target.findById(MEMBER_A).getMoney()).isEqualTo(700);
+        target.debit(MEMBER_A, 100);
+
+        //지워졌어야 할 세그먼트가 남은 채로 다시 시작
+        for (Path segment : segments) {
+            Files.copy(backup.resolve(segment.getFileName()), segment);
+        }
+        new WriteBehindMemberRepository(target, dataSource, new DataSourceTransactionManager(dataSource), walDir, 60_000, 5).close();
+
+        assertThat(target.findById(MEMBER_A).getMoney()).isEqualTo(600);
+    }
+
+    @Test
+    @DisplayName("바깥 트랜잭션이 로우 락을 잡은 채로 debit - 그 회원 pending 을 같은 트랜잭션에서 반영해서 멈추지 않는다")
+    void flushInCallerTransaction() {
+        DataSourceTransactionManager transactionManager = new DataSourceTransactionManager(dataSource);
+        try (WriteBehindMemberRepository repository = new WriteBehindMemberRepository(
+                target, dataSource, transactionManager, walDir, 60_000, 5)) {
+            new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+                repository.credit(MEMBER_A, 100);       //바깥 트랜잭션이 memberA 로우 락을 잡는다.
+                repository.update(MEMBER_A, 900);       //pending
+                repository.debit(MEMBER_A, 50);         //pending 을 먼저 반영 - 새 트랜잭션이면 위의 락을 기다리다 멈춘다.
+            });
+
+            assertThat(target.findById(MEMBER_A).getMoney()).isEqualTo(850);
+            assertThat(repository.getPendingCount()).isEqualTo(0);
+        }
+    }
+
+    @Test
+    @DisplayName("바깥 트랜잭션이 롤백되면 반영도 취소되고 pending 에 남는다")
+    void flushInCallerTransactionRollback() {
+        DataSourceTransactionManager transactionManager = new DataSourceTransactionManager(dataSource);
+        try (WriteBehindMemberRepository repository = new WriteBehindMemberRepository(
+                target, dataSource, transactionManager, walDir, 60_000, 5)) {
+            repository.update(MEMBER_A, 900);
+            new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+                repository.debit(MEMBER_A, 50);
+                status.setRollbackOnly();
+            });
+
+            assertThat(repository.getPendingCount()).isEqualTo(1);
+            repository.flush();
+            assertThat(target.findById(MEMBER_A).getMoney()).isEqualTo(900);
+        }
+    }
+}
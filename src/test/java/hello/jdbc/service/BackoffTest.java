@@ -0,0 +1,21 @@
+package hello.jdbc.service;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class BackoffTest {
+
+    @Test
+    @DisplayName("상한은 시도마다 두배, max 를 넘지 않는다")
+    void cap() {
+        Backoff backoff = new Backoff(10, 100);
+
+        assertThat(backoff.cap(1)).isEqualTo(10);
+        assertThat(backoff.cap(2)).isEqualTo(20);
+        assertThat(backoff.cap(4)).isEqualTo(80);
+        assertThat(backoff.cap(5)).isEqualTo(100);
+        assertThat(backoff.cap(1000)).isEqualTo(100);       //shift 가 넘치지 않는다.
+    }
+}
@@ -0,0 +1,95 @@
+package hello.jdbc.service;
+
+import com.zaxxer.hikari.HikariDataSource;
+import hello.jdbc.domain.Member;
+import hello.jdbc.repository.MemberRepository;
+import hello.jdbc.repository.MemberRepositoryV5;
+import hello.jdbc.repository.ex.MyOptimisticLockException;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static hello.jdbc.connection.ConnectionConst.*;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * 낙관적 락 이체 - version 충돌시 재시도
+ */
+@Slf4j
+public class OptimisticTransferExecutorTest {
+
+    public static final String MEMBER_A = "memberA";
+    public static final String MEMBER_B = "memberB";
+
+    private HikariDataSource dataSource;
+
+    private MemberRepository memberRepository;
+
+    private OptimisticTransferExecutor executor;
+
+    @BeforeEach
+    void before() {
+        dataSource = new HikariDataSource();
+        dataSource.setJdbcUrl(URL);
+        dataSource.setUsername(USERNAME);
+        dataSource.setPassword(PASSWORD);
+
+        memberRepository = new MemberRepositoryV5(dataSource);
+        executor = new OptimisticTransferExecutor(memberRepository, new DataSourceTransactionManager(dataSource), 100, 1, 20);
+    }
+
+    @AfterEach
+    void after() {
+        memberRepository.delete(MEMBER_A);
+        memberRepository.delete(MEMBER_B);
+        dataSource.close();
+    }
+
+    @Test
+    @DisplayName("동시 이체 - 충돌은 재시도로 해결, 갱신 손실 없음")
+    void concurrentTransfers() throws Exception {
+        memberRepository.save(new Member(MEMBER_A, 10000));
+        memberRepository.save(new Member(MEMBER_B, 0));
+
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int i = 0; i < 40; i++) {
+            futures.add(pool.submit(() -> executor.accountTransfer(MEMBER_A, MEMBER_B, 100)));
+        }
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        pool.shutdown();
+
+        assertThat(memberRepository.findById(MEMBER_A).getMoney()).isEqualTo(6000);
+        assertThat(memberRepository.findById(MEMBER_B).getMoney()).isEqualTo(4000);
+
+        RetryMetrics metrics = executor.getMetrics();
+        log.info("metrics={}", metrics);
+        assertThat(metrics.getCalls()).isEqualTo(40);
+        assertThat(metrics.getAttempts()).isEqualTo(40 + metrics.getConflicts());
+    }
+
+    @Test
+    @DisplayName("version 이 다르면 MyOptimisticLockException")
+    void updateWithStaleVersion() {
+        memberRepository.save(new Member(MEMBER_A, 10000));
+        Member member = memberRepository.findByIdWithVersion(MEMBER_A);
+
+        memberRepository.updateWithVersion(MEMBER_A, 9000, member.getVersion());
+
+        assertThatThrownBy(() -> memberRepository.updateWithVersion(MEMBER_A, 8000, member.getVersion()))
+                .isInstanceOf(MyOptimisticLockException.class);
+        assertThat(memberRepository.findByIdWithVersion(MEMBER_A).getVersion()).isEqualTo(member.getVersion() + 1);
+    }
+}
@@ -0,0 +1,125 @@
+package hello.jdbc.service;
+
+import hello.jdbc.domain.Member;
+import hello.jdbc.domain.Transfer;
+import hello.jdbc.domain.TransferResult;
+import hello.jdbc.repository.MemberRepository;
+import hello.jdbc.repository.MemberRepositoryV5;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static hello.jdbc.connection.ConnectionConst.*;
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * 이체 배치 - 트랜잭션 하나 / 청크 단위 커밋
+ */
+@Slf4j
+public class TransferBatchServiceTest {
+
+    public static final String MEMBER_A = "memberA";
+    public static final String MEMBER_B = "memberB";
+    public static final String MEMBER_C = "memberC";
+    public static final String MEMBER_EX = "ex";
+
+    private MemberRepository memberRepository;
+
+    private TransferBatchService transferBatchService;
+
+    @BeforeEach
+    void before() {
+        DriverManagerDataSource dataSource = new DriverManagerDataSource(URL, USERNAME, PASSWORD);
+
+        memberRepository = new MemberRepositoryV5(dataSource);
+        transferBatchService = new TransferBatchService(memberRepository, new DataSourceTransactionManager(dataSource));
+    }
+
+    @AfterEach
+    void after() {
+        memberRepository.delete(MEMBER_A);
+        memberRepository.delete(MEMBER_B);
+        memberRepository.delete(MEMBER_C);
+        memberRepository.delete(MEMBER_EX);
+    }
+
+    @Test
+    @DisplayName("배치 이체 - 건별 결과")
+    void accountTransferBatch() {
+        memberRepository.save(new Member(MEMBER_A, 10000));
+        memberRepository.save(new Member(MEMBER_B, 10000));
+        memberRepository.save(new Member(MEMBER_EX, 10000));
+
+        List<TransferResult> results = transferBatchService.accountTransferBatch(List.of(
+                new Transfer(MEMBER_A, MEMBER_B, 2000),         //성공
+                new Transfer(MEMBER_A, MEMBER_B, 50000),        //잔액 부족
+                new Transfer(MEMBER_A, MEMBER_EX, 1000),        //검증 실패
+                new Transfer(MEMBER_B, MEMBER_C, 1000)          //받는 회원 없음
+        ));
+
+        assertThat(results).extracting(TransferResult::isSuccess).containsExactly(true, false, false, false);
+
+        assertThat(memberRepository.findById(MEMBER_A).getMoney()).isEqualTo(8000);
+        assertThat(memberRepository.findById(MEMBER_B).getMoney()).isEqualTo(12000);
+        assertThat(memberRepository.findById(MEMBER_EX).getMoney()).isEqualTo(10000);
+    }
+
+    @Test
+    @DisplayName("배치 이체 - 청크 단위 커밋")
+    void accountTransferBatchChunk() {
+        memberRepository.save(new Member(MEMBER_A, 10000));
+        memberRepository.save(new Member(MEMBER_B, 10000));
+
+        List<TransferResult> results = transferBatchService.accountTransferBatch(List.of(
+                new Transfer(MEMBER_A, MEMBER_B, 1000),
+                new Transfer(MEMBER_A, MEMBER_B, 1000),
+                new Transfer(MEMBER_B, MEMBER_A, 500)
+        ), 2);
+
+        assertThat(results).allMatch(TransferResult::isSuccess);
+        assertThat(memberRepository.findById(MEMBER_A).getMoney()).isEqualTo(8500);
+        assertThat(memberRepository.findById(MEMBER_B).getMoney()).isEqualTo(11500);
+    }
+
+    @Test
+    @DisplayName("배치 이체 - 두번째 청크가 롤백돼도 첫 청크 결과는 돌아온다")
+    void accountTransferBatchChunkRollback() {
+        memberRepository.save(new Member(MEMBER_A, 10000));
+        memberRepository.save(new Member(MEMBER_B, 10000));
+
+        //두번째 청크의 입금에서 DB 예외
+        DriverManagerDataSource dataSource = new DriverManagerDataSource(URL, USERNAME, PASSWORD);
+        AtomicInteger creditCalls = new AtomicInteger();
+        MemberRepository failingRepository = new MemberRepositoryV5(dataSource) {
+            @Override
+            public int[] creditAll(List<Transfer> transfers) {
+                if (creditCalls.incrementAndGet() == 2) {
+                    throw new DataAccessResourceFailureException("입금 중 DB 장애");
+                }
+                return super.creditAll(transfers);
+            }
+        };
+        TransferBatchService service = new TransferBatchService(failingRepository, new DataSourceTransactionManager(dataSource));
+
+        List<TransferResult> results = service.accountTransferBatch(List.of(
+                new Transfer(MEMBER_A, MEMBER_B, 1000),
+                new Transfer(MEMBER_A, MEMBER_B, 1000),
+                new Transfer(MEMBER_B, MEMBER_A, 500)
+        ), 2);
+
+        assertThat(results).extracting(TransferResult::isSuccess).containsExactly(true, true, false);
+        assertThat(results.get(2).getFailReason()).startsWith("청크 롤백: ");
+
+        //첫 청크만 커밋, 두번째 청크의 출금은 롤백
+        assertThat(memberRepository.findById(MEMBER_A).getMoney()).isEqualTo(8000);
+        assertThat(memberRepository.findById(MEMBER_B).getMoney()).isEqualTo(12000);
+    }
+}
@@ -0,0 +1,65 @@
+package hello.jdbc.service;
+
+import hello.jdbc.domain.Member;
+import hello.jdbc.domain.Transfer;
+import hello.jdbc.domain.TransferResult;
+import hello.jdbc.repository.MemberRepository;
+import hello.jdbc.repository.MemberRepositoryV5;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+import java.util.List;
+
+import static hello.jdbc.connection.ConnectionConst.*;
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * 이체 상계 - 계좌별 순증감만 반영
+ */
+@Slf4j
+public class TransferNettingServiceTest {
+
+    public static final String MEMBER_A = "memberA";
+    public static final String MEMBER_B = "memberB";
+
+    private MemberRepository memberRepository;
+
+    private TransferNettingService nettingService;
+
+    @BeforeEach
+    void before() {
+        DriverManagerDataSource dataSource = new DriverManagerDataSource(URL, USERNAME, PASSWORD);
+
+        memberRepository = new MemberRepositoryV5(dataSource);
+        nettingService = new TransferNettingService(memberRepository, new DataSourceTransactionManager(dataSource));
+    }
+
+    @AfterEach
+    void after() {
+        memberRepository.delete(MEMBER_A);
+        memberRepository.delete(MEMBER_B);
+    }
+
+    @Test
+    @DisplayName("상계 - 받은 돈으로 다시 보낼 수 있고, 잔액 부족 건만 실패")
+    void settle() {
+        memberRepository.save(new Member(MEMBER_A, 1000));
+        memberRepository.save(new Member(MEMBER_B, 0));
+
+        List<TransferResult> results = nettingService.settle(List.of(
+                new Transfer(MEMBER_A, MEMBER_B, 1000),     //A 0, B 1000
+                new Transfer(MEMBER_B, MEMBER_A, 700),      //A 700, B 300
+                new Transfer(MEMBER_B, MEMBER_A, 500),      //잔액 부족
+                new Transfer(MEMBER_A, MEMBER_B, 200)       //A 500, B 500
+        ));
+
+        assertThat(results).extracting(TransferResult::isSuccess).containsExactly(true, true, false, true);
+        assertThat(memberRepository.findById(MEMBER_A).getMoney()).isEqualTo(500);
+        assertThat(memberRepository.findById(MEMBER_B).getMoney()).isEqualTo(500);
+    }
+}
@@ -0,0 +1,96 @@
+package hello.jdbc.service;
+
+import com.zaxxer.hikari.HikariDataSource;
+import hello.jdbc.domain.Member;
+import hello.jdbc.domain.Transfer;
+import hello.jdbc.domain.TransferResult;
+import hello.jdbc.repository.MemberRepository;
+import hello.jdbc.repository.MemberRepositoryV5;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static hello.jdbc.connection.ConnectionConst.*;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * 그룹 커밋 - 실패한 건만 세이브포인트로 되돌린다.
+ */
+@Slf4j
+public class TransferQueueTest {
+
+    public static final String MEMBER_A = "memberA";
+    public static final String MEMBER_B = "memberB";
+    public static final String MEMBER_EX = "ex";
+
+    private HikariDataSource dataSource;
+
+    private MemberRepository memberRepository;
+
+    private TransferQueue transferQueue;
+
+    @BeforeEach
+    void before() {
+        dataSource = new HikariDataSource();
+        dataSource.setJdbcUrl(URL);
+        dataSource.setUsername(USERNAME);
+        dataSource.setPassword(PASSWORD);
+
+        memberRepository = new MemberRepositoryV5(dataSource);
+        transferQueue = new TransferQueue(memberRepository, new DataSourceTransactionManager(dataSource), 64, 2000);
+    }
+
+    @AfterEach
+    void after() throws InterruptedException {
+        transferQueue.close();
+        memberRepository.delete(MEMBER_A);
+        memberRepository.delete(MEMBER_B);
+        memberRepository.delete(MEMBER_EX);
+        dataSource.close();
+    }
+
+    @Test
+    @DisplayName("그룹 커밋 - 검증 실패 건만 실패")
+    void groupCommit() {
+        memberRepository.save(new Member(MEMBER_A, 10000));
+        memberRepository.save(new Member(MEMBER_B, 0));
+        memberRepository.save(new Member(MEMBER_EX, 0));
+
+        List<CompletableFuture<TransferResult>> futures = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            futures.add(transferQueue.submit(new Transfer(MEMBER_A, MEMBER_B, 100)));
+        }
+        CompletableFuture<TransferResult> failed = transferQueue.submit(new Transfer(MEMBER_A, MEMBER_EX, 100));
+
+        for (CompletableFuture<TransferResult> future : futures) {
+            assertThat(future.join().isSuccess()).isTrue();
+        }
+        assertThat(failed.join().isSuccess()).isFalse();
+
+        assertThat(memberRepository.findById(MEMBER_A).getMoney()).isEqualTo(9000);
+        assertThat(memberRepository.findById(MEMBER_B).getMoney()).isEqualTo(1000);
+        assertThat(memberRepository.findById(MEMBER_EX).getMoney()).isEqualTo(0);
+    }
+
+    @Test
+    @DisplayName("종료 후 submit 은 거절, 종료 전에 받은 건은 모두 끝난다")
+    void submitAfterClose() throws InterruptedException {
+        memberRepository.save(new Member(MEMBER_A, 10000));
+        memberRepository.save(new Member(MEMBER_B, 0));
+
+        CompletableFuture<TransferResult> accepted = transferQueue.submit(new Transfer(MEMBER_A, MEMBER_B, 100));
+        transferQueue.close();
+
+        assertThat(accepted.isDone()).isTrue();
+        assertThatThrownBy(() -> transferQueue.submit(new Transfer(MEMBER_A, MEMBER_B, 100)))
+                .isInstanceOf(IllegalStateException.class);
+    }
+}
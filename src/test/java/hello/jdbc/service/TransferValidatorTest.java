@@ -0,0 +1,40 @@
+package hello.jdbc.service;
+
+import hello.jdbc.domain.Transfer;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class TransferValidatorTest {
+
+    @Test
+    @DisplayName("이체 시작 전 검증 - 금액, 같은 계좌")
+    void validateRequest() {
+        assertThatThrownBy(() -> TransferValidator.validateRequest("memberA", "memberB", 0))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> TransferValidator.validateRequest("memberA", "memberA", 1000))
+                .isInstanceOf(IllegalArgumentException.class);
+
+        TransferValidator.validateRequest("memberA", "memberB", 1000);
+    }
+
+    @Test
+    @DisplayName("이체중 예외 - ex 로 보내면 IllegalStateException")
+    void validateTarget() {
+        assertThatThrownBy(() -> TransferValidator.validateTarget("ex"))
+                .isInstanceOf(IllegalStateException.class);
+
+        TransferValidator.validateTarget("memberB");
+    }
+
+    @Test
+    @DisplayName("배치용 검증 - 예외 대신 실패 이유")
+    void failReason() {
+        assertThat(TransferValidator.failReason(new Transfer("memberA", "memberB", -1))).isEqualTo(TransferValidator.INVALID_MONEY);
+        assertThat(TransferValidator.failReason(new Transfer("memberA", "memberA", 1000))).isEqualTo(TransferValidator.SAME_ACCOUNT);
+        assertThat(TransferValidator.failReason(new Transfer("memberA", "ex", 1000))).isEqualTo(TransferValidator.TRANSFER_EX);
+        assertThat(TransferValidator.failReason(new Transfer("memberA", "memberB", 1000))).isNull();
+    }
+}
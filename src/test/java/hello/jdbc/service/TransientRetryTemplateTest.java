@@ -0,0 +1,67 @@
+package hello.jdbc.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.CannotAcquireLockException;
+import org.springframework.dao.DuplicateKeyException;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * 일시적 DB 예외 재시도
+ */
+@Slf4j
+public class TransientRetryTemplateTest {
+
+    @Test
+    @DisplayName("락 timeout 은 재시도해서 성공")
+    void retryTransient() {
+        TransientRetryTemplate retryTemplate = new TransientRetryTemplate(5, 1, 10, 10);
+        AtomicInteger calls = new AtomicInteger();
+
+        String result = retryTemplate.execute(() -> {
+            if (calls.incrementAndGet() < 3) {
+                throw new CannotAcquireLockException("lock timeout");
+            }
+            return "ok";
+        });
+
+        assertThat(result).isEqualTo("ok");
+        assertThat(calls.get()).isEqualTo(3);
+        assertThat(retryTemplate.getMetrics().getRetries()).isEqualTo(2);
+    }
+
+    @Test
+    @DisplayName("키 중복은 재시도하지 않는다")
+    void noRetryNonTransient() {
+        TransientRetryTemplate retryTemplate = new TransientRetryTemplate(5, 1, 10, 10);
+        AtomicInteger calls = new AtomicInteger();
+
+        assertThatThrownBy(() -> retryTemplate.run(() -> {
+            calls.incrementAndGet();
+            throw new DuplicateKeyException("duplicate");
+        })).isInstanceOf(DuplicateKeyException.class);
+
+        assertThat(calls.get()).isEqualTo(1);
+    }
+
+    @Test
+    @DisplayName("재시도 예산이 없으면 바로 실패")
+    void retryBudget() {
+        TransientRetryTemplate retryTemplate = new TransientRetryTemplate(5, 0, 0, 2);
+        AtomicInteger calls = new AtomicInteger();
+
+        assertThatThrownBy(() -> retryTemplate.run(() -> {
+            calls.incrementAndGet();
+            throw new CannotAcquireLockException("lock timeout");
+        })).isInstanceOf(CannotAcquireLockException.class);
+
+        //첫 시도 + 예산 2번
+        assertThat(calls.get()).isEqualTo(3);
+        assertThat(retryTemplate.getMetrics().getThrottled()).isEqualTo(1);
+    }
+}
@@ -0,0 +1,96 @@
+package hello.jdbc.support;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class GroupCollectorTest {
+
+    @Test
+    @DisplayName("묶어서 넘긴다 - maxBatchSize 를 넘지 않는다")
+    void batching() throws InterruptedException {
+        List<Integer> sizes = new CopyOnWriteArrayList<>();
+        GroupCollector<CompletableFuture<Integer>> collector = new GroupCollector<>("test-collector", 8, 50_000,
+                batch -> {
+                    sizes.add(batch.size());
+                    batch.forEach(future -> future.complete(batch.size()));
+                },
+                CompletableFuture::completeExceptionally);
+
+        List<CompletableFuture<Integer>> futures = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            CompletableFuture<Integer> future = new CompletableFuture<>();
+            collector.submit(future);
+            futures.add(future);
+        }
+        collector.close();
+
+        assertThat(futures).allMatch(CompletableFuture::isDone);
+        assertThat(sizes).allMatch(size -> size <= 8);
+        assertThat(sizes.stream().mapToInt(Integer::intValue).sum()).isEqualTo(20);
+    }
+
+    @Test
+    @DisplayName("submit 과 close 가 겹쳐도 받은 요청은 모두 끝난다")
+    void submitRacingClose() throws InterruptedException {
+        for (int round = 0; round < 20; round++) {
+            GroupCollector<CompletableFuture<Integer>> collector = new GroupCollector<>("test-collector", 16, 100,
+                    batch -> batch.forEach(future -> future.complete(1)),
+                    CompletableFuture::completeExceptionally);
+
+            List<CompletableFuture<Integer>> accepted = new CopyOnWriteArrayList<>();
+            CountDownLatch start = new CountDownLatch(1);
+            ExecutorService executor = Executors.newFixedThreadPool(4);
+            for (int t = 0; t < 4; t++) {
+                executor.submit(() -> {
+                    start.await();
+                    for (int i = 0; i < 1000; i++) {
+                        CompletableFuture<Integer> future = new CompletableFuture<>();
+                        try {
+                            collector.submit(future);
+                        } catch (IllegalStateException e) {
+                            return null;        //종료 후 거절
+                        }
+                        accepted.add(future);
+                    }
+                    return null;
+                });
+            }
+            start.countDown();
+            collector.close();
+            executor.shutdown();
+            assertThat(executor.awaitTermination(10, TimeUnit.SECONDS)).isTrue();
+
+            assertThat(accepted).allMatch(CompletableFuture::isDone);
+        }
+    }
+
+    @Test
+    @DisplayName("처리 중 예외 - 그 묶음만 실패, 다음 묶음은 계속 처리")
+    void handlerFailure() throws InterruptedException {
+        GroupCollector<CompletableFuture<Integer>> collector = new GroupCollector<>("test-collector", 1, 0,
+                batch -> {
+                    throw new IllegalStateException("처리 실패");
+                },
+                CompletableFuture::completeExceptionally);
+
+        CompletableFuture<Integer> first = new CompletableFuture<>();
+        collector.submit(first);
+        CompletableFuture<Integer> second = new CompletableFuture<>();
+        collector.submit(second);
+        collector.close();
+
+        assertThat(first.isCompletedExceptionally()).isTrue();
+        assertThat(second.isCompletedExceptionally()).isTrue();
+    }
+}